@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of laying out the pin slots, the work done by
+ * {@link PinEntryEditText} on every size change and measure pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SlotLayoutBenchmark {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 160;
+    private static final int PADDING = 24;
+    private static final float SPACE = 24;
+    private static final float TEXT_HEIGHT = 48;
+    private static final float TEXT_BOTTOM_PADDING = 8;
+
+    @Param({"4", "8", "16", "32", "64"})
+    public int numChars;
+
+    @Param({"false", "true"})
+    public boolean rtl;
+
+    /**
+     * fixed: a fixed gap, slotWide: a negative space so gaps are as wide as a slot,
+     * grouped: a fixed gap with an extra gap every 4 slots, square: a fixed gap with
+     * square backgrounds as tall as the view.
+     */
+    @Param({"fixed", "slotWide", "grouped", "square"})
+    public String spacing;
+
+    private float mSpace;
+    private int mGroupSize;
+    private float mGroupSpace;
+    private boolean mIsSquare;
+    private float[] mSlots;
+
+    @Setup
+    public void setUp() {
+        mSpace = "slotWide".equals(spacing) ? -1 : SPACE;
+        mGroupSize = "grouped".equals(spacing) ? 4 : 0;
+        mGroupSpace = "grouped".equals(spacing) ? SPACE * 2 : 0;
+        mIsSquare = "square".equals(spacing);
+        mSlots = new float[numChars * SlotLayout.STRIDE];
+    }
+
+    @Benchmark
+    public float[] layout() {
+        int availableWidth = WIDTH - PADDING * 2;
+        float charSize = SlotLayout.computeCharSize(availableWidth, numChars, mSpace, mGroupSize, mGroupSpace);
+        float bottom = HEIGHT - PADDING;
+        float top = SlotLayout.computeSlotTop(bottom, PADDING, true, mIsSquare, TEXT_HEIGHT, TEXT_BOTTOM_PADDING);
+        SlotLayout.layout(0, numChars, WIDTH, PADDING, charSize, mSpace, mGroupSize, mGroupSpace, 0,
+                rtl, top, bottom, mSlots);
+        return mSlots;
+    }
+
+    @Benchmark
+    public float measure() {
+        return SlotLayout.measureWidth(TEXT_HEIGHT, numChars, mSpace, mGroupSize, mGroupSpace);
+    }
+
+    @Benchmark
+    public int hitTest() {
+        float charSize = SlotLayout.computeCharSize(WIDTH - PADDING * 2, numChars, mSpace, mGroupSize, mGroupSpace);
+        return SlotLayout.slotAt(WIDTH / 2f, numChars, charSize, mSpace, mGroupSize, mGroupSpace);
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+
+import java.util.Arrays;
+
+/**
+ * The built-in {@link SlotRenderer}. All lines with the same color and stroke are drawn
+ * with a single {@link Canvas#drawLines(float[], int, int, Paint)} call and, from API 16,
+ * all characters with a single positioned text call, instead of one call per slot.
+ */
+public class DefaultSlotRenderer implements SlotRenderer {
+    private float[] mLines = new float[0];
+    private char[] mChars = new char[0];
+    private float[] mPositions = new float[0];
+    //For each slot state, the first state drawn with the same color and stroke
+    private final int[] mLineGroups = new int[PinEntryEditText.SLOT_STATE_COUNT];
+
+    @Override
+    public void drawDecorations(PinEntryEditText view, Canvas canvas, float[] bounds, int[] states, int first, int end) {
+        if (view.mPinBackground != null) {
+            for (int i = first; i < end; i++) {
+                int offset = i * SlotLayout.STRIDE;
+                Drawable background = view.getSlotBackground(i, states[i]);
+                background.setBounds((int) bounds[offset], (int) bounds[offset + 1], (int) bounds[offset + 2], (int) bounds[offset + 3]);
+                background.draw(canvas);
+            }
+            return;
+        }
+
+        int length = (end - first) * SlotLayout.STRIDE;
+        if (mLines.length < length) {
+            mLines = new float[length];
+        }
+        updateLineGroups(view);
+        //One batch per color and stroke, states that look the same share it
+        for (int group = 0; group < PinEntryEditText.SLOT_STATE_COUNT; group++) {
+            if (mLineGroups[group] != group) {
+                continue;
+            }
+            int count = 0;
+            for (int i = first; i < end; i++) {
+                if (mLineGroups[states[i]] == group) {
+                    System.arraycopy(bounds, i * SlotLayout.STRIDE, mLines, count, SlotLayout.STRIDE);
+                    count += SlotLayout.STRIDE;
+                }
+            }
+            if (count > 0) {
+                view.applyLineState(group);
+                canvas.drawLines(mLines, 0, count, view.mLinesPaint);
+            }
+        }
+    }
+
+    private void updateLineGroups(PinEntryEditText view) {
+        for (int state = 0; state < PinEntryEditText.SLOT_STATE_COUNT; state++) {
+            int color = view.getLineColor(state);
+            float stroke = view.getLineStroke(state);
+            int group = 0;
+            while (group < state && (view.getLineColor(group) != color || view.getLineStroke(group) != stroke)) {
+                group++;
+            }
+            mLineGroups[state] = group;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void drawCharacters(PinEntryEditText view, Canvas canvas, CharSequence text, int charsPerSlot,
+                               int[] slots, int count, float[] x, float[] baselines, Paint paint) {
+        if (count == 0) {
+            return;
+        }
+        //Hardware accelerated canvases only support drawPosText from API 16
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                || charsPerSlot != 1 || !fillChars(text, slots, count)) {
+            //Multi-character masks and surrogate pairs can't be positioned per character
+            for (int i = 0; i < count; i++) {
+                int slot = slots[i];
+                canvas.drawText(text, slot * charsPerSlot, (slot + 1) * charsPerSlot, x[slot], baselines[slot], paint);
+            }
+            return;
+        }
+        if (mPositions.length < count * 2) {
+            mPositions = new float[count * 2];
+        }
+        for (int i = 0; i < count; i++) {
+            mPositions[i * 2] = x[slots[i]];
+            mPositions[i * 2 + 1] = baselines[slots[i]];
+        }
+        canvas.drawPosText(mChars, 0, count, mPositions, paint);
+        //The characters may be the unmasked pin
+        Arrays.fill(mChars, 0, count, '\0');
+    }
+
+    /**
+     * Copies the character of each slot into the reused char array.
+     *
+     * @return false if one of them is half of a surrogate pair.
+     */
+    private boolean fillChars(CharSequence text, int[] slots, int count) {
+        if (mChars.length < count) {
+            mChars = new char[count];
+        }
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(slots[i]);
+            if (Character.isSurrogate(c)) {
+                Arrays.fill(mChars, 0, i, '\0');
+                return false;
+            }
+            mChars[i] = c;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import androidx.core.view.ViewCompat;
+
+import java.util.ArrayList;
+
+/**
+ * A single frame callback shared by the {@link SlotAnimator}s of a {@link PinEntryGroup},
+ * so any number of animating fields cost one callback per frame instead of one each.
+ * The callback is posted through the view of one of the scheduled animators.
+ */
+final class FrameClock implements Runnable {
+    private final ArrayList<SlotAnimator> mScheduled = new ArrayList<>();
+    private final ArrayList<SlotAnimator> mRunning = new ArrayList<>();
+    private SlotAnimator mHost;
+
+    /**
+     * Runs {@code animator} on the next frame.
+     */
+    void schedule(SlotAnimator animator) {
+        if (!mScheduled.contains(animator)) {
+            mScheduled.add(animator);
+        }
+        if (mHost == null) {
+            post(animator);
+        }
+    }
+
+    void unschedule(SlotAnimator animator) {
+        mScheduled.remove(animator);
+        if (mHost == animator) {
+            //The host may be going away with its view, post through one that is still scheduled
+            mHost.getView().removeCallbacks(this);
+            mHost = null;
+            if (!mScheduled.isEmpty()) {
+                post(mScheduled.get(0));
+            }
+        }
+    }
+
+    private void post(SlotAnimator host) {
+        mHost = host;
+        ViewCompat.postOnAnimation(host.getView(), this);
+    }
+
+    @Override
+    public void run() {
+        mHost = null;
+        //Animators scheduling themselves again while running are run on the next frame
+        mRunning.addAll(mScheduled);
+        mScheduled.clear();
+        for (int i = 0; i < mRunning.size(); i++) {
+            mRunning.get(i).run();
+        }
+        mRunning.clear();
+    }
+}
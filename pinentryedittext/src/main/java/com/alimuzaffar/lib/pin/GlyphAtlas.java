@@ -0,0 +1,139 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+
+import java.util.Arrays;
+
+/**
+ * A small set of glyphs rasterized once, side by side, into a single bitmap for a given
+ * paint configuration. Drawing a glyph is then a bitmap blit instead of a text layout call.
+ */
+final class GlyphAtlas {
+    private static final int PADDING = 2; //room for glyphs that overhang their advance
+
+    private final Paint mGlyphPaint = new Paint();
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+
+    private Bitmap mBitmap;
+    private String[] mGlyphs;
+    private int[] mOffsets;
+    private float mTextSize;
+    private Typeface mTypeface;
+    private int mColor;
+
+    /**
+     * @return true if the atlas has been built and was rasterized with the same text size,
+     * typeface and color as {@code paint}.
+     */
+    boolean isValidFor(Paint paint) {
+        return mBitmap != null
+                && mTextSize == paint.getTextSize()
+                && mTypeface == paint.getTypeface()
+                && mColor == paint.getColor();
+    }
+
+    /**
+     * @return true if the atlas has been built for exactly {@code glyphs}.
+     */
+    boolean holds(String[] glyphs) {
+        return mGlyphs != null && Arrays.equals(mGlyphs, glyphs);
+    }
+
+    void build(Paint paint, String[] glyphs) {
+        recycle();
+        mGlyphPaint.set(paint);
+        mGlyphPaint.getFontMetrics(mFontMetrics);
+        mTextSize = paint.getTextSize();
+        mTypeface = paint.getTypeface();
+        mColor = paint.getColor();
+
+        int[] offsets = new int[glyphs.length + 1];
+        for (int i = 0; i < glyphs.length; i++) {
+            offsets[i + 1] = offsets[i] + (int) Math.ceil(mGlyphPaint.measureText(glyphs[i])) + PADDING * 2;
+        }
+        int width = offsets[glyphs.length];
+        int height = (int) Math.ceil(mFontMetrics.bottom - mFontMetrics.top) + PADDING * 2;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mBitmap);
+        for (int i = 0; i < glyphs.length; i++) {
+            canvas.drawText(glyphs[i], offsets[i] + PADDING, PADDING - mFontMetrics.top, mGlyphPaint);
+        }
+        mGlyphs = glyphs;
+        mOffsets = offsets;
+    }
+
+    /**
+     * Draws {@code text} from {@code start} to {@code end} as if it was drawn using
+     * {@link Canvas#drawText(CharSequence, int, int, float, float, Paint)}.
+     *
+     * @return false if the atlas doesn't contain the glyph, nothing is drawn in that case.
+     */
+    boolean draw(Canvas canvas, CharSequence text, int start, int end, float x, float y) {
+        if (mBitmap == null) {
+            return false;
+        }
+        int index = indexOf(text, start, end);
+        if (index < 0) {
+            return false;
+        }
+        mSrc.set(mOffsets[index], 0, mOffsets[index + 1], mBitmap.getHeight());
+        float left = x - PADDING;
+        float top = y + mFontMetrics.top - PADDING;
+        mDst.set(left, top, left + mSrc.width(), top + mSrc.height());
+        canvas.drawBitmap(mBitmap, mSrc, mDst, null);
+        return true;
+    }
+
+    void recycle() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+        mGlyphs = null;
+        mOffsets = null;
+    }
+
+    private int indexOf(CharSequence text, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < mGlyphs.length; i++) {
+            String glyph = mGlyphs[i];
+            if (glyph.length() != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && glyph.charAt(j) == text.charAt(start + j)) {
+                j++;
+            }
+            if (j == length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.Arrays;
+
+/**
+ * Advance widths of single characters for one typeface and text size. A pin only uses a
+ * handful of characters, so after the first measurement of each one, getting its width is
+ * an array lookup. The cache clears itself when the paint's typeface or text size changes.
+ */
+final class GlyphWidthCache {
+    private static final float EMPTY = -1;
+
+    private final char[] mChar = new char[1];
+    private char[] mKeys = new char[32];
+    private float[] mWidths = new float[32];
+    private int mSize;
+    private Typeface mTypeface;
+    private float mTextSize;
+
+    GlyphWidthCache() {
+        Arrays.fill(mWidths, EMPTY);
+    }
+
+    /**
+     * @return the advance width of {@code c} drawn with {@code paint}. Not meant for
+     * surrogates, they have no width of their own.
+     */
+    float getWidth(char c, Paint paint) {
+        if (paint.getTypeface() != mTypeface || paint.getTextSize() != mTextSize) {
+            clear();
+            mTypeface = paint.getTypeface();
+            mTextSize = paint.getTextSize();
+        }
+        int mask = mKeys.length - 1;
+        int i = c & mask;
+        while (mWidths[i] != EMPTY) {
+            if (mKeys[i] == c) {
+                return mWidths[i];
+            }
+            i = (i + 1) & mask;
+        }
+
+        mChar[0] = c;
+        float width = paint.measureText(mChar, 0, 1);
+        if ((mSize + 1) * 2 > mKeys.length) {
+            grow();
+            put(c, width);
+        } else {
+            mKeys[i] = c;
+            mWidths[i] = width;
+            mSize++;
+        }
+        return width;
+    }
+
+    void clear() {
+        Arrays.fill(mWidths, EMPTY);
+        mSize = 0;
+    }
+
+    private void grow() {
+        char[] keys = mKeys;
+        float[] widths = mWidths;
+        mKeys = new char[keys.length * 2];
+        mWidths = new float[keys.length * 2];
+        Arrays.fill(mWidths, EMPTY);
+        mSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (widths[i] != EMPTY) {
+                put(keys[i], widths[i]);
+            }
+        }
+    }
+
+    private void put(char c, float width) {
+        int mask = mKeys.length - 1;
+        int i = c & mask;
+        while (mWidths[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = c;
+        mWidths[i] = width;
+        mSize++;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A read-only view of some text where every character is replaced by the mask.
+ * Nothing is copied, the length follows the source text as it changes. Each character
+ * of the source maps to the whole mask, so masks made of several code units (e.g. emoji)
+ * take {@code mask.length()} characters per source character.
+ */
+final class MaskedText implements CharSequence {
+    private final CharSequence mSource;
+    private final String mMask;
+
+    MaskedText(CharSequence source, String mask) {
+        mSource = source;
+        mMask = mask;
+    }
+
+    CharSequence getSource() {
+        return mSource;
+    }
+
+    @Override
+    public int length() {
+        return mSource.length() * mMask.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+        }
+        return mMask.charAt(index % mMask.length());
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            sb.append(mMask.charAt(i % mMask.length()));
+        }
+        return sb.toString();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A fixed capacity, wipeable buffer holding the characters of a PIN.
+ * <p/>
+ * The buffer is handed out as a read-only {@link CharSequence}, use {@link #toCharArray()}
+ * if the PIN needs to outlive the callback and {@link #wipe()} when done with it.
+ * {@link #toString()} and {@link #subSequence(int, int)} create immutable copies that
+ * can't be wiped, avoid them for sensitive input.
+ */
+public final class PinBuffer implements CharSequence {
+    private char[] mChars;
+    private int mLength;
+
+    PinBuffer(int capacity) {
+        mChars = new char[capacity];
+    }
+
+    public int capacity() {
+        return mChars.length;
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= mLength) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + mLength);
+        }
+        return mChars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > mLength || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + mLength);
+        }
+        return new String(mChars, start, end - start);
+    }
+
+    /**
+     * @return a copy of the characters in this buffer, the caller is responsible for
+     * zeroing it when done.
+     */
+    public char[] toCharArray() {
+        return Arrays.copyOf(mChars, mLength);
+    }
+
+    /**
+     * Compares the content of this buffer with {@code other} without copying either.
+     */
+    public boolean contentEquals(CharSequence other) {
+        if (other == null || other.length() != mLength) {
+            return false;
+        }
+        for (int i = 0; i < mLength; i++) {
+            if (mChars[i] != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zeroes the buffer and sets its length to 0.
+     */
+    public void wipe() {
+        Arrays.fill(mChars, '\0');
+        mLength = 0;
+    }
+
+    /**
+     * Appends {@code c}, unless the buffer is full.
+     *
+     * @return false if the buffer is full.
+     */
+    boolean append(char c) {
+        if (mLength == mChars.length) {
+            return false;
+        }
+        mChars[mLength++] = c;
+        return true;
+    }
+
+    /**
+     * Replaces the characters from {@code start} to {@code end} with the characters of
+     * {@code text} from {@code textStart} to {@code textEnd}. Characters that don't fit
+     * in the buffer are dropped.
+     */
+    void replace(int start, int end, CharSequence text, int textStart, int textEnd) {
+        start = Math.min(start, mLength);
+        end = Math.min(end, mLength);
+        int newLength = mLength - (end - start) + (textEnd - textStart);
+        if (newLength > mChars.length) {
+            textEnd -= newLength - mChars.length;
+            newLength = mChars.length;
+        }
+        System.arraycopy(mChars, end, mChars, start + (textEnd - textStart), newLength - start - (textEnd - textStart));
+        for (int i = textStart; i < textEnd; i++) {
+            mChars[start + i - textStart] = text.charAt(i);
+        }
+        if (newLength < mLength) {
+            Arrays.fill(mChars, newLength, mLength, '\0');
+        }
+        mLength = newLength;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mLength);
+    }
+}
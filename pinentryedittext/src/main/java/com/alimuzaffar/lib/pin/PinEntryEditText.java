@@ -15,43 +15,108 @@
  */
 package com.alimuzaffar.lib.pin;
 
-import android.animation.Animator;
-import android.animation.AnimatorSet;
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.ColorStateList;
-import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.Editable;
 import android.text.InputFilter;
 import android.text.InputType;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.AttributeSet;
-import android.util.TypedValue;
 import android.view.ActionMode;
+import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.view.animation.OvershootInterpolator;
+import android.view.animation.CycleInterpolator;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
 import android.view.inputmethod.InputMethodManager;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.appcompat.widget.AppCompatEditText;
-import androidx.core.content.ContextCompat;
+import androidx.core.os.CancellationSignal;
+import androidx.core.os.TraceCompat;
 import androidx.core.view.ViewCompat;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 public class PinEntryEditText extends AppCompatEditText {
     private static final String XML_NAMESPACE_ANDROID = "http://schemas.android.com/apk/res/android";
 
     public static final String DEFAULT_MASK = "\u25CF";
+    public static final int ANIMATION_NONE = -1;
+    public static final int ANIMATION_POP_IN = 0;
+    public static final int ANIMATION_FROM_BOTTOM = 1;
+    public static final int MASK_SHAPE_NONE = 0;
+    public static final int MASK_SHAPE_CIRCLE = 1;
+    public static final int MASK_SHAPE_SQUARE = 2;
+    public static final int MASK_SHAPE_PATH = 3;
+    public static final int ERROR_FEEDBACK_NONE = 0;
+    public static final int ERROR_FEEDBACK_SHAKE = 1;
+    public static final int ERROR_FEEDBACK_FLASH = 2;
+    public static final int DISPATCH_AFTER_ANIMATION = 0;
+    public static final int DISPATCH_IMMEDIATELY = 1;
+    public static final int SLOT_STATE_ERROR = 0;
+    public static final int SLOT_STATE_FOCUSED_EMPTY = 1;
+    public static final int SLOT_STATE_FOCUSED_NEXT = 2;
+    public static final int SLOT_STATE_FOCUSED_FILLED = 3;
+    public static final int SLOT_STATE_UNFOCUSED_EMPTY = 4;
+    public static final int SLOT_STATE_UNFOCUSED_FILLED = 5;
+    public static final int SLOT_STATE_COUNT = 6;
+    private static final int[] STATE_SET_SELECTED = {android.R.attr.state_selected};
+    private static final int[] STATE_SET_ERROR = {android.R.attr.state_active};
+    private static final int[] STATE_SET_FOCUSED = {android.R.attr.state_focused};
+    private static final int[] STATE_SET_UNFOCUSED = {-android.R.attr.state_focused};
+    //Drawable states of the pin background, indexed by slot state
+    private static final int[][] DRAWABLE_STATE_SETS = new int[][]{
+            STATE_SET_ERROR,
+            STATE_SET_FOCUSED,
+            new int[]{android.R.attr.state_focused, android.R.attr.state_selected},
+            new int[]{android.R.attr.state_focused, android.R.attr.state_checked},
+            STATE_SET_UNFOCUSED,
+            new int[]{-android.R.attr.state_focused, android.R.attr.state_checked},
+    };
+    //Delay between the animations of characters inserted together, e.g. a pasted or autofilled code
+    private static final long INSERT_STAGGER_MS = 30;
+    //Same as HintConstants.AUTOFILL_HINT_SMS_OTP in androidx.autofill
+    private static final String AUTOFILL_HINT_SMS_OTP = "smsOTPCode";
+    //Stored in the Editable instead of the real characters when secure input is enabled
+    private static final char SECURE_PLACEHOLDER = '0';
+    private static final String SECURE_PLACEHOLDER_STRING = String.valueOf(SECURE_PLACEHOLDER);
+    private static final float ERROR_SHAKE_DISTANCE = 8; //8dp
+    private static final long ERROR_SHAKE_DURATION_MS = 400;
+    private static final long ERROR_FLASH_DURATION_MS = 300;
+    private static final float ERROR_FLASH_ALPHA = 0.3f;
+    //Size of a mask shape relative to the text size, about as big as DEFAULT_MASK
+    private static final float MASK_SHAPE_SIZE = 0.5f;
+    private static final String[] DIGITS = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"};
 
     protected String mMask = null;
-    protected StringBuilder mMaskChars = null;
+    protected int mMaskShape = MASK_SHAPE_NONE;
+    protected Path mMaskPath;
+    private final Path mScaledMaskPath = new Path();
+    private final Matrix mMaskPathMatrix = new Matrix();
+    private final RectF mMaskPathBounds = new RectF();
+    private final RectF mMaskShapeBounds = new RectF();
+    private float mScaledMaskPathSize;
     protected String mSingleCharHint = null;
     protected int mAnimatedType = 0;
     protected float mSpace = 24; //24 dp by default, space between the lines
@@ -61,28 +126,128 @@ public class PinEntryEditText extends AppCompatEditText {
     protected int mMaxLength = 4;
     protected RectF[] mLineCoords;
     protected float[] mCharBottom;
+    protected float[] mSlotBounds;
+    //Per slot state and text position handed to the renderer, filled before each draw
+    private int[] mSlotStates;
+    private float[] mTextX;
+    private int[] mStaticSlots;
+    protected SlotRenderer mSlotRenderer = new DefaultSlotRenderer();
+    protected float mMinSlotSize = 0;
+    protected int mGroupSize = 0;
+    protected float mGroupSpace;
+    //Horizontal scroll position when the slots are wider than the view, see setMinSlotSize
+    protected float mScrollOffset;
+    private float mContentWidth;
+    private float mViewportWidth;
+    private float mSlotTop;
+    private float mSlotBottom;
+    //Only the slots from mFirstVisibleSlot to mVisibleSlotEnd (exclusive) are laid out and drawn
+    private int mFirstVisibleSlot;
+    private int mVisibleSlotEnd;
     protected Paint mCharPaint;
     protected Paint mLastCharPaint;
     protected Paint mSingleCharPaint;
     protected Drawable mPinBackground;
+    protected boolean mPinBackgroundPerSlot = false;
+    private Drawable[] mSlotBackgrounds;
     protected Rect mTextHeight = new Rect();
+    protected float[] mTextWidths = new float[4];
+    protected float mHintWidth;
+    protected boolean mTextWidthsDirty = true;
+    protected boolean mGlyphCacheEnabled = false;
+    private GlyphAtlas mCharAtlas;
+    private GlyphAtlas mHintAtlas;
+    //Glyphs rasterized into the atlases, null until the next draw after they changed
+    private String[] mCharGlyphs;
+    private String[] mHintGlyphs;
+    private MaskedText mMaskedText;
+    private GlyphWidthCache mGlyphWidths = new GlyphWidthCache();
+    protected boolean mDecorationCacheEnabled = false;
+    private Bitmap mDecorationCache;
+    private Canvas mDecorationCanvas;
+    private boolean mDecorationDirty = true;
+    private boolean mDecorationFocused;
+    private boolean mDecorationError;
+    private int mDecorationTextLength;
+    private final SlotAnimator mSlotAnimator = new SlotAnimator(this, new SlotAnimator.Listener() {
+        @Override
+        public void onSlotAnimationFrame(int firstSlot, int lastSlot) {
+            invalidateSlots(firstSlot, lastSlot + 1);
+        }
+
+        @Override
+        public void onSlotAnimationEnd(int slot) {
+            if (mMetricsListener != null) {
+                mMetricsListener.onAnimationEnd(slot, SystemClock.uptimeMillis(), mSlotAnimator.getDroppedFrames(slot));
+            }
+            if (slot == mPinEnteredSlot && getPinText().length() == mMaxLength) {
+                dispatchPinEntered();
+            }
+        }
+    });
+    //Slot whose animation dispatches onPinEntered when it ends, -1 if none
+    private int mPinEnteredSlot = -1;
+    private boolean mPinEnteredDispatched = false;
+    protected int mPinEnteredDispatchMode = DISPATCH_AFTER_ANIMATION;
+    protected MetricsListener mMetricsListener = null;
+    protected PinVerifier mPinVerifier = null;
+    protected Executor mVerifierExecutor = null;
+    protected OnPinVerifiedListener mOnPinVerifiedListener = null;
+    private CancellationSignal mVerification;
+    private Handler mMainHandler;
+    private long mKeystrokeTime;
+    private long mEntryStartTime;
+    //Inputs the current slot geometry was computed from
+    private int mGeometryWidth;
+    private int mGeometryHeight;
+    private int mGeometryPaddingStart;
+    private int mGeometryPaddingEnd;
+    private int mGeometryPaddingTop;
+    private int mGeometryPaddingBottom;
+    private float mGeometrySpace;
+    private boolean mGeometryRtl;
+    private boolean mGeometryHasBackground;
+    private boolean mGeometryDigitSquare;
+    private float mGeometryTextHeight;
+    private float mGeometryTextBottomPadding;
+    private float mGeometryMinSlotSize;
+    private int mGeometryGroupSize;
+    private float mGeometryGroupSpace;
+    protected boolean mSecureInput = false;
+    protected boolean mFastInput = false;
+    private PinInputConnection mInputConnection;
+    protected PinBuffer mPinBuffer;
+    private boolean mScrubbingText = false;
+    private final TextWatcher mSecureTextWatcher = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            scrubText(s);
+        }
+    };
     protected boolean mIsDigitSquare = false;
 
     protected OnClickListener mClickListener;
     protected OnPinEnteredListener mOnPinEnteredListener = null;
+    PinEntryGroup mGroup;
 
     protected float mLineStroke = 1; //1dp by default
     protected float mLineStrokeSelected = 2; //2dp by default
     protected Paint mLinesPaint;
     protected boolean mAnimate = false;
     protected boolean mHasError = false;
+    protected int mErrorFeedback = ERROR_FEEDBACK_NONE;
+    //Stays set until the error is cleared, an end listener would keep the animation off the RenderThread
+    private boolean mErrorFeedbackRunning = false;
     protected ColorStateList mOriginalTextColors;
-    protected int[][] mStates = new int[][]{
-            new int[]{android.R.attr.state_selected}, // selected
-            new int[]{android.R.attr.state_active}, // error
-            new int[]{android.R.attr.state_focused}, // focused
-            new int[]{-android.R.attr.state_focused}, // unfocused
-    };
+    protected int[][] mStates = PinEntryStyle.LINE_STATES;
 
     protected int[] mColors = new int[]{
             Color.GREEN,
@@ -92,9 +257,26 @@ public class PinEntryEditText extends AppCompatEditText {
     };
 
     protected ColorStateList mColorStates = new ColorStateList(mStates, mColors);
+    protected int[] mLineColorTable = new int[SLOT_STATE_COUNT];
+    protected float[] mLineStrokeTable = new float[SLOT_STATE_COUNT];
+    private boolean mSlotStateTablesDirty = true;
+    private int mLinesPaintState = -1;
 
     public PinEntryEditText(Context context) {
         super(context);
+        init(context, null);
+        //Without attributes there is no android:maxLength to install a filter
+        setFilters(new InputFilter[]{new InputFilter.LengthFilter(mMaxLength)});
+    }
+
+    /**
+     * Creates a fully initialized view from a style built in code with
+     * {@link PinEntryStyle.Builder}, without reading any attributes.
+     */
+    public PinEntryEditText(Context context, PinEntryStyle style) {
+        super(context);
+        init(style, style.mMaxLength);
+        setFilters(new InputFilter[]{new InputFilter.LengthFilter(mMaxLength)});
     }
 
     public PinEntryEditText(Context context, AttributeSet attrs) {
@@ -110,73 +292,301 @@ public class PinEntryEditText extends AppCompatEditText {
     public void setMaxLength(final int maxLength) {
         mMaxLength = maxLength;
         mNumChars = maxLength;
+        if (mPinBuffer != null) {
+            mPinBuffer.wipe();
+            mPinBuffer = new PinBuffer(maxLength);
+        }
 
         setFilters(new InputFilter[]{new InputFilter.LengthFilter(maxLength)});
 
         setText(null);
+        if (mLineCoords != null) {
+            updateSlotGeometry();
+        }
         invalidate();
     }
 
     public void setMask(String mask) {
         mMask = mask;
-        mMaskChars = null;
+        mMaskedText = null;
+        mTextWidthsDirty = true;
+        recycleGlyphAtlases();
         invalidate();
     }
 
-    public void setSingleCharHint(String hint) {
-        mSingleCharHint = hint;
+    /**
+     * Draws every entered character as a shape sized from the text size instead of a mask
+     * character, so masked slots don't need any text measuring or shaping.
+     *
+     * @param maskShape {@link #MASK_SHAPE_NONE} to draw the characters (or the text mask),
+     *                  {@link #MASK_SHAPE_CIRCLE} or {@link #MASK_SHAPE_SQUARE}
+     */
+    public void setMaskShape(int maskShape) {
+        mMaskShape = maskShape;
+        mTextWidthsDirty = true;
+        recycleGlyphAtlases();
         invalidate();
     }
 
-    private void init(Context context, AttributeSet attrs) {
-        float multi = context.getResources().getDisplayMetrics().density;
-        mLineStroke = multi * mLineStroke;
-        mLineStrokeSelected = multi * mLineStrokeSelected;
-        mSpace = multi * mSpace; //convert to pixels for our density
-        mTextBottomPadding = multi * mTextBottomPadding; //convert to pixels for our density
+    /**
+     * Draws every entered character as {@code path}, scaled to fit a square sized from
+     * the text size, see {@link #setMaskShape(int)}. A null path removes the shape mask.
+     */
+    public void setMaskShape(@Nullable Path path) {
+        mMaskPath = path;
+        mScaledMaskPathSize = 0;
+        setMaskShape(path != null ? MASK_SHAPE_PATH : MASK_SHAPE_NONE);
+    }
 
-        TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.PinEntryEditText, 0, 0);
-        try {
-            TypedValue outValue = new TypedValue();
-            ta.getValue(R.styleable.PinEntryEditText_pinAnimationType, outValue);
-            mAnimatedType = outValue.data;
-            mMask = ta.getString(R.styleable.PinEntryEditText_pinCharacterMask);
-            mSingleCharHint = ta.getString(R.styleable.PinEntryEditText_pinRepeatedHint);
-            mLineStroke = ta.getDimension(R.styleable.PinEntryEditText_pinLineStroke, mLineStroke);
-            mLineStrokeSelected = ta.getDimension(R.styleable.PinEntryEditText_pinLineStrokeSelected, mLineStrokeSelected);
-            mSpace = ta.getDimension(R.styleable.PinEntryEditText_pinCharacterSpacing, mSpace);
-            mTextBottomPadding = ta.getDimension(R.styleable.PinEntryEditText_pinTextBottomPadding, mTextBottomPadding);
-            mIsDigitSquare = ta.getBoolean(R.styleable.PinEntryEditText_pinBackgroundIsSquare, mIsDigitSquare);
-            mPinBackground = ta.getDrawable(R.styleable.PinEntryEditText_pinBackgroundDrawable);
-            ColorStateList colors = ta.getColorStateList(R.styleable.PinEntryEditText_pinLineColors);
-            if (colors != null) {
-                mColorStates = colors;
+    /**
+     * When enabled, the PIN is kept in a fixed capacity {@link PinBuffer} instead of the
+     * {@link Editable}, which only ever holds placeholders. {@link OnPinEnteredListener}
+     * then receives the buffer, which can be read and compared without copying and
+     * zeroed with {@link #wipe()}. Changing this clears the current text.
+     */
+    public void setSecureInputEnabled(boolean enabled) {
+        if (mSecureInput == enabled) {
+            return;
+        }
+        if (enabled) {
+            //Fast input may already hold the pin in a buffer, it is reused and cleared below
+            if (mPinBuffer == null) {
+                mPinBuffer = new PinBuffer(mMaxLength);
             }
-        } finally {
-            ta.recycle();
+            addTextChangedListener(mSecureTextWatcher);
+        } else {
+            removeTextChangedListener(mSecureTextWatcher);
+        }
+        mSecureInput = enabled;
+        clearPin();
+        if (!enabled && !mFastInput) {
+            mPinBuffer = null;
+        }
+    }
+
+    public boolean isSecureInputEnabled() {
+        return mSecureInput;
+    }
+
+    /**
+     * Zeroes the secure buffer (if secure input is enabled) and clears the text.
+     */
+    public void wipe() {
+        setText(null);
+        if (mPinBuffer != null) {
+            mPinBuffer.wipe();
+        }
+    }
+
+    /**
+     * @return the PIN as entered so far without copying it. This is the {@link PinBuffer}
+     * when secure input is enabled, otherwise the {@link Editable} returned by getText().
+     */
+    public CharSequence getPinText() {
+        return mSecureInput || mFastInput ? mPinBuffer : getText();
+    }
+
+    /**
+     * When enabled, the view provides its own input connection which writes keystrokes
+     * straight into a fixed capacity {@link PinBuffer}, bypassing the Editable, its spans,
+     * input filters and text watchers. Only the changed slots are redrawn. Use
+     * {@link #getPinText()} to read the pin, getText() only reflects text set by the app.
+     * Changing this clears the current text.
+     */
+    public void setFastInputEnabled(boolean enabled) {
+        if (mFastInput == enabled) {
+            return;
+        }
+        if (enabled && mPinBuffer == null) {
+            mPinBuffer = new PinBuffer(mMaxLength);
+        }
+        mFastInput = enabled;
+        clearPin();
+        if (!enabled && !mSecureInput) {
+            mPinBuffer = null;
+        }
+        InputMethodManager inputMethodManager = (InputMethodManager) getContext()
+                .getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (inputMethodManager != null) {
+            inputMethodManager.restartInput(this);
+        }
+    }
+
+    /**
+     * Clears the text and wipes the buffer after switching input modes. Characters typed
+     * in fast input mode never reached the Editable, so clearing the text alone doesn't
+     * remove them from the buffer.
+     */
+    private void clearPin() {
+        if (mPinBuffer != null) {
+            mPinBuffer.wipe();
         }
+        setText(null);
+        invalidate();
+    }
+
+    public boolean isFastInputEnabled() {
+        return mFastInput;
+    }
+
+    @Override
+    public InputConnection onCreateInputConnection(EditorInfo outAttrs) {
+        if (!mFastInput) {
+            return super.onCreateInputConnection(outAttrs);
+        }
+        outAttrs.inputType = getInputType();
+        outAttrs.imeOptions = getImeOptions() | EditorInfo.IME_FLAG_NO_EXTRACT_UI;
+        outAttrs.initialSelStart = mPinBuffer.length();
+        outAttrs.initialSelEnd = mPinBuffer.length();
+        mInputConnection = new PinInputConnection(this);
+        return mInputConnection;
+    }
+
+    /**
+     * @return the pin as reported to the input method in fast input mode, placeholders
+     * when secure input is enabled.
+     */
+    CharSequence getInputMethodText() {
+        return mSecureInput ? new MaskedText(mPinBuffer, SECURE_PLACEHOLDER_STRING) : mPinBuffer;
+    }
+
+    private void reportFastInputChanged() {
+        if (mInputConnection != null) {
+            mInputConnection.reportTextChanged();
+        }
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (mFastInput) {
+            //Hardware keys and the key events sent by input methods
+            if (keyCode == KeyEvent.KEYCODE_DEL) {
+                deleteFast(1);
+                reportFastInputChanged();
+                return true;
+            }
+            int c = event.getUnicodeChar();
+            if (c != 0 && !Character.isISOControl(c) && c <= Character.MAX_VALUE) {
+                insertFast((char) c);
+                reportFastInputChanged();
+                return true;
+            }
+        }
+        return super.onKeyDown(keyCode, event);
+    }
+
+    /**
+     * Appends the characters of {@code text} the input type accepts, up to the max length.
+     *
+     * @return the number of characters appended.
+     */
+    int insertFast(CharSequence text) {
+        int start = mPinBuffer.length();
+        for (int i = 0; i < text.length(); i++) {
+            if (acceptsChar(text.charAt(i)) && !mPinBuffer.append(text.charAt(i))) {
+                break;
+            }
+        }
+        int count = mPinBuffer.length() - start;
+        if (count > 0) {
+            dispatchTextChanged(mPinBuffer, start, 0, count);
+        }
+        return count;
+    }
+
+    private void insertFast(char c) {
+        int start = mPinBuffer.length();
+        if (acceptsChar(c) && mPinBuffer.append(c)) {
+            dispatchTextChanged(mPinBuffer, start, 0, 1);
+        }
+    }
+
+    /**
+     * Deletes up to {@code count} characters from the end of the pin.
+     */
+    void deleteFast(int count) {
+        int length = mPinBuffer.length();
+        count = Math.min(count, length);
+        if (count <= 0) {
+            return;
+        }
+        mPinBuffer.replace(length - count, length, "", 0, 0);
+        dispatchTextChanged(mPinBuffer, length - count, count, 0);
+    }
+
+    private boolean acceptsChar(char c) {
+        if ((getInputType() & InputType.TYPE_MASK_CLASS) == InputType.TYPE_CLASS_NUMBER) {
+            return c >= '0' && c <= '9';
+        }
+        return !Character.isISOControl(c);
+    }
+
+    public void setSingleCharHint(String hint) {
+        mSingleCharHint = hint;
+        mTextWidthsDirty = true;
+        recycleGlyphAtlases();
+        invalidate();
+    }
+
+    /**
+     * When enabled, the digits, the mask and the hint are rasterized once per paint
+     * configuration and blitted from a bitmap instead of being drawn as text every frame.
+     * Disabled by default.
+     */
+    public void setGlyphCacheEnabled(boolean enabled) {
+        mGlyphCacheEnabled = enabled;
+        if (!enabled) {
+            recycleGlyphAtlases();
+        }
+        invalidate();
+    }
+
+    /**
+     * Applies a resolved, possibly shared, style. Only the mutable state (paints, the pin
+     * background instance) is created for this view.
+     */
+    protected void applyStyle(PinEntryStyle style) {
+        mAnimatedType = style.mAnimatedType;
+        mMask = style.mMask;
+        mMaskShape = style.mMaskShape;
+        mSingleCharHint = style.mSingleCharHint;
+        mLineStroke = style.mLineStroke;
+        mLineStrokeSelected = style.mLineStrokeSelected;
+        mSpace = style.mSpace;
+        mTextBottomPadding = style.mTextBottomPadding;
+        mIsDigitSquare = style.mIsDigitSquare;
+        mErrorFeedback = style.mErrorFeedback;
+        mMinSlotSize = style.mMinSlotSize;
+        mGroupSize = style.mGroupSize;
+        mGroupSpace = style.mGroupSpace;
+        mPinBackground = style.newPinBackground(getResources());
+        mSlotBackgrounds = null;
+        System.arraycopy(style.mDefaultColors, 0, mColors, 0, mColors.length);
+        mColorStates = style.mLineColors;
+        mSlotStateTablesDirty = true;
 
         mCharPaint = new Paint(getPaint());
         mLastCharPaint = new Paint(getPaint());
         mSingleCharPaint = new Paint(getPaint());
         mLinesPaint = new Paint(getPaint());
         mLinesPaint.setStrokeWidth(mLineStroke);
+    }
 
-        TypedValue outValue = new TypedValue();
-        context.getTheme().resolveAttribute(R.attr.colorControlActivated,
-                outValue, true);
-        int colorSelected = outValue.data;
-        mColors[0] = colorSelected;
-
-        int colorFocused = isInEditMode() ? Color.GRAY : ContextCompat.getColor(context, R.color.pin_normal);
-        mColors[1] = colorFocused;
+    private void init(Context context, @Nullable AttributeSet attrs) {
+        PinEntryStyle style = PinEntryStyle.obtain(context, attrs, isInEditMode());
+        int maxLength = style.mMaxLength;
+        if (attrs != null) {
+            maxLength = attrs.getAttributeIntValue(XML_NAMESPACE_ANDROID, "maxLength", maxLength);
+        }
+        init(style, maxLength);
+    }
 
-        int colorUnfocused = isInEditMode() ? Color.GRAY : ContextCompat.getColor(context, R.color.pin_normal);
-        mColors[2] = colorUnfocused;
+    private void init(PinEntryStyle style, int maxLength) {
+        applyStyle(style);
 
         setBackgroundResource(0);
 
-        mMaxLength = attrs.getAttributeIntValue(XML_NAMESPACE_ANDROID, "maxLength", 4);
+        mMaxLength = maxLength;
         mNumChars = mMaxLength;
 
         //Disable copy paste
@@ -216,28 +626,46 @@ public class PinEntryEditText extends AppCompatEditText {
         });
 
         //If input type is password and no mask is set, use a default mask
-        if ((getInputType() & InputType.TYPE_TEXT_VARIATION_PASSWORD) == InputType.TYPE_TEXT_VARIATION_PASSWORD && TextUtils.isEmpty(mMask)) {
-            mMask = DEFAULT_MASK;
-        } else if ((getInputType() & InputType.TYPE_NUMBER_VARIATION_PASSWORD) == InputType.TYPE_NUMBER_VARIATION_PASSWORD && TextUtils.isEmpty(mMask)) {
+        if (isPasswordInputType(getInputType()) && TextUtils.isEmpty(mMask)) {
             mMask = DEFAULT_MASK;
         }
 
-        if (!TextUtils.isEmpty(mMask)) {
-            mMaskChars = getMaskChars();
-        }
+        updateAutofillHints();
 
         //Height of the characters, used if there is a background drawable
         getPaint().getTextBounds("|", 0, 1, mTextHeight);
 
-        mAnimate = mAnimatedType > -1;
+        mAnimate = mAnimatedType > ANIMATION_NONE;
+    }
+
+    /**
+     * Lets autofill offer one-time codes received by SMS, unless this is a password or
+     * hints were set. The hint is removed again if the input type becomes a password.
+     */
+    private void updateAutofillHints() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        String[] hints = getAutofillHints();
+        if (isPasswordInputType(getInputType())) {
+            if (hints != null && hints.length == 1 && AUTOFILL_HINT_SMS_OTP.equals(hints[0])) {
+                setAutofillHints((String[]) null);
+            }
+        } else if (hints == null) {
+            setAutofillHints(AUTOFILL_HINT_SMS_OTP);
+        }
+    }
+
+    private static boolean isPasswordInputType(int type) {
+        return (type & InputType.TYPE_TEXT_VARIATION_PASSWORD) == InputType.TYPE_TEXT_VARIATION_PASSWORD
+                || (type & InputType.TYPE_NUMBER_VARIATION_PASSWORD) == InputType.TYPE_NUMBER_VARIATION_PASSWORD;
     }
 
     @Override
     public void setInputType(int type) {
         super.setInputType(type);
 
-        if ((type & InputType.TYPE_TEXT_VARIATION_PASSWORD) == InputType.TYPE_TEXT_VARIATION_PASSWORD
-                || (type & InputType.TYPE_NUMBER_VARIATION_PASSWORD) == InputType.TYPE_NUMBER_VARIATION_PASSWORD) {
+        if (isPasswordInputType(type)) {
             // If input type is password and no mask is set, use a default mask
             if (TextUtils.isEmpty(mMask)) {
                 setMask(DEFAULT_MASK);
@@ -246,7 +674,7 @@ public class PinEntryEditText extends AppCompatEditText {
             // If input type is not password, remove mask
             setMask(null);
         }
-
+        updateAutofillHints();
     }
 
     @Override
@@ -258,43 +686,175 @@ public class PinEntryEditText extends AppCompatEditText {
             mCharPaint.setColor(mOriginalTextColors.getDefaultColor());
             mSingleCharPaint.setColor(getCurrentHintTextColor());
         }
-        int availableWidth = getWidth() - ViewCompat.getPaddingEnd(this) - ViewCompat.getPaddingStart(this);
-        if (mSpace < 0) {
-            mCharSize = (availableWidth / (mNumChars * 2 - 1));
-        } else {
-            mCharSize = (availableWidth - (mSpace * (mNumChars - 1))) / mNumChars;
-        }
-        mLineCoords = new RectF[(int) mNumChars];
-        mCharBottom = new float[(int) mNumChars];
-        int startX;
-        int bottom = getHeight() - getPaddingBottom();
-        int rtlFlag;
+        updateSlotGeometry();
+    }
+
+    /**
+     * Lays out the slots. The geometry is cached, nothing is recomputed or allocated
+     * unless one of its inputs changed, and the arrays are only reallocated when the
+     * number of slots changes.
+     */
+    protected void updateSlotGeometry() {
+        int width = getWidth();
+        int height = getHeight();
+        int paddingStart = ViewCompat.getPaddingStart(this);
+        int paddingEnd = ViewCompat.getPaddingEnd(this);
+        int paddingTop = getPaddingTop();
+        int paddingBottom = getPaddingBottom();
+        int numChars = (int) mNumChars;
+        boolean hasBackground = mPinBackground != null;
+        float textHeight = mTextHeight.height();
         final boolean isLayoutRtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
-        if (isLayoutRtl) {
-            rtlFlag = -1;
-            startX = (int) (getWidth() - ViewCompat.getPaddingStart(this) - mCharSize);
-        } else {
-            rtlFlag = 1;
-            startX = ViewCompat.getPaddingStart(this);
-        }
-        for (int i = 0; i < mNumChars; i++) {
-            mLineCoords[i] = new RectF(startX, bottom, startX + mCharSize, bottom);
-            if (mPinBackground != null) {
-                if (mIsDigitSquare) {
-                    mLineCoords[i].top = getPaddingTop();
-                    mLineCoords[i].right = startX + mLineCoords[i].width();
-                } else {
-                    mLineCoords[i].top -= mTextHeight.height() + mTextBottomPadding * 2;
-                }
+        if (mLineCoords != null && mLineCoords.length == numChars
+                && mGeometryWidth == width && mGeometryHeight == height
+                && mGeometryPaddingStart == paddingStart && mGeometryPaddingEnd == paddingEnd
+                && mGeometryPaddingTop == paddingTop && mGeometryPaddingBottom == paddingBottom
+                && mGeometrySpace == mSpace && mGeometryRtl == isLayoutRtl
+                && mGeometryHasBackground == hasBackground && mGeometryDigitSquare == mIsDigitSquare
+                && mGeometryTextHeight == textHeight && mGeometryTextBottomPadding == mTextBottomPadding
+                && mGeometryMinSlotSize == mMinSlotSize && mGeometryGroupSize == mGroupSize
+                && mGeometryGroupSpace == mGroupSpace) {
+            return;
+        }
+        mGeometryWidth = width;
+        mGeometryHeight = height;
+        mGeometryPaddingStart = paddingStart;
+        mGeometryPaddingEnd = paddingEnd;
+        mGeometryPaddingTop = paddingTop;
+        mGeometryPaddingBottom = paddingBottom;
+        mGeometrySpace = mSpace;
+        mGeometryRtl = isLayoutRtl;
+        mGeometryHasBackground = hasBackground;
+        mGeometryDigitSquare = mIsDigitSquare;
+        mGeometryTextHeight = textHeight;
+        mGeometryTextBottomPadding = mTextBottomPadding;
+        mGeometryMinSlotSize = mMinSlotSize;
+        mGeometryGroupSize = mGroupSize;
+        mGeometryGroupSpace = mGroupSpace;
+
+        if (mLineCoords == null || mLineCoords.length != numChars) {
+            mLineCoords = new RectF[numChars];
+            for (int i = 0; i < numChars; i++) {
+                mLineCoords[i] = new RectF();
             }
+            mCharBottom = new float[numChars];
+            mSlotBounds = new float[numChars * SlotLayout.STRIDE];
+            mSlotStates = new int[numChars];
+            mTextX = new float[numChars];
+            mStaticSlots = new int[numChars];
+            mSlotAnimator.setSlotCount(numChars);
+            flushPendingPinEntered();
+        }
 
-            if (mSpace < 0) {
-                startX += rtlFlag * mCharSize * 2;
-            } else {
-                startX += rtlFlag * (mCharSize + mSpace);
-            }
+        mViewportWidth = width - paddingEnd - paddingStart;
+        mCharSize = computeSlotSize(mViewportWidth);
+        mContentWidth = SlotLayout.measureWidth(mCharSize, numChars, mSpace, mGroupSize, mGroupSpace);
+        mSlotBottom = height - paddingBottom;
+        mSlotTop = SlotLayout.computeSlotTop(mSlotBottom, paddingTop, hasBackground, mIsDigitSquare,
+                textHeight, mTextBottomPadding);
+        layoutVisibleSlots();
+        if (isScrollable()) {
+            scrollToSlot(getPinText().length());
+        }
+    }
+
+    /**
+     * @return the width of a slot when all slots have to fit in {@code availableWidth},
+     * but no narrower than the minimum slot size.
+     */
+    private float computeSlotSize(float availableWidth) {
+        float charSize = SlotLayout.computeCharSize(availableWidth, (int) mNumChars, mSpace, mGroupSize, mGroupSpace);
+        return Math.max(charSize, mMinSlotSize);
+    }
+
+    /**
+     * @return true if the slots are wider than the view and have to be scrolled.
+     */
+    private boolean isScrollable() {
+        return mContentWidth > mViewportWidth;
+    }
+
+    /**
+     * Lays out the slots that intersect the viewport at the current scroll offset.
+     */
+    private void layoutVisibleSlots() {
+        int numChars = mLineCoords.length;
+        mScrollOffset = Math.max(0, Math.min(mScrollOffset, mContentWidth - mViewportWidth));
+        if (isScrollable()) {
+            mFirstVisibleSlot = SlotLayout.slotAt(mScrollOffset, numChars, mCharSize, mSpace, mGroupSize, mGroupSpace);
+            mVisibleSlotEnd = SlotLayout.slotAt(mScrollOffset + mViewportWidth, numChars, mCharSize, mSpace, mGroupSize, mGroupSpace) + 1;
+        } else {
+            mFirstVisibleSlot = 0;
+            mVisibleSlotEnd = numChars;
+        }
+        final boolean isLayoutRtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        SlotLayout.layout(mFirstVisibleSlot, mVisibleSlotEnd, getWidth(), ViewCompat.getPaddingStart(this), mCharSize, mSpace,
+                mGroupSize, mGroupSpace, mScrollOffset, isLayoutRtl, mSlotTop, mSlotBottom, mSlotBounds);
+        for (int i = mFirstVisibleSlot; i < mVisibleSlotEnd; i++) {
+            int offset = i * SlotLayout.STRIDE;
+            mLineCoords[i].set(mSlotBounds[offset], mSlotBounds[offset + 1], mSlotBounds[offset + 2], mSlotBounds[offset + 3]);
             mCharBottom[i] = mLineCoords[i].bottom - mTextBottomPadding;
         }
+        mDecorationDirty = true;
+    }
+
+    /**
+     * Scrolls horizontally, if the slots are wider than the view, just enough for
+     * {@code slot} to be fully visible.
+     */
+    public void scrollToSlot(int slot) {
+        if (mLineCoords == null || mLineCoords.length == 0 || !isScrollable()) {
+            return;
+        }
+        slot = Math.max(0, Math.min(slot, mLineCoords.length - 1));
+        float start = SlotLayout.slotOffset(slot, mCharSize, mSpace, mGroupSize, mGroupSpace);
+        float scrollOffset = mScrollOffset;
+        if (start < scrollOffset) {
+            scrollOffset = start;
+        } else if (start + mCharSize > scrollOffset + mViewportWidth) {
+            scrollOffset = start + mCharSize - mViewportWidth;
+        }
+        if (scrollOffset != mScrollOffset) {
+            mScrollOffset = scrollOffset;
+            layoutVisibleSlots();
+            invalidate();
+        }
+    }
+
+    /**
+     * Slots never get narrower than {@code minSlotSize} (in pixels). Longer codes, like
+     * licence keys, then scroll horizontally to keep the next slot visible and only the
+     * visible slots are laid out and drawn. 0 (the default) always fits all slots in the view.
+     */
+    public void setMinSlotSize(float minSlotSize) {
+        mMinSlotSize = minSlotSize;
+        requestLayout();
+        if (mLineCoords != null) {
+            updateSlotGeometry();
+        }
+        invalidate();
+    }
+
+    /**
+     * Groups the slots, e.g. XXXX XXXX XXXX for a {@code groupSize} of 4.
+     *
+     * @param groupSize  number of slots per group, 0 to not group slots
+     * @param groupSpace extra space (in pixels) between two groups
+     */
+    public void setSlotGroups(int groupSize, float groupSpace) {
+        mGroupSize = groupSize;
+        mGroupSpace = groupSpace;
+        requestLayout();
+        if (mLineCoords != null) {
+            updateSlotGeometry();
+        }
+        invalidate();
+    }
+
+    @Override
+    public boolean bringPointIntoView(int offset) {
+        //The slots scroll themselves, scrolling the text as well would shift them out of place
+        return mMinSlotSize <= 0 && super.bringPointIntoView(offset);
     }
 
     @Override
@@ -309,16 +869,16 @@ public class PinEntryEditText extends AppCompatEditText {
             // if width and height are set to wrap_content or match_parent
             if (widthMode == MeasureSpec.EXACTLY) {
                 measuredWidth = MeasureSpec.getSize(widthMeasureSpec);
-                measuredHeight = (int) ((measuredWidth - (mNumChars - 1 * mSpace)) / mNumChars);
+                measuredHeight = (int) computeSlotSize(measuredWidth);
             } else if (heightMode == MeasureSpec.EXACTLY) {
                 measuredHeight = MeasureSpec.getSize(heightMeasureSpec);
-                measuredWidth = (int) ((measuredHeight * mNumChars) + (mSpace * mNumChars - 1));
+                measuredWidth = (int) SlotLayout.measureWidth(measuredHeight, (int) mNumChars, mSpace, mGroupSize, mGroupSpace);
             } else if (widthMode == MeasureSpec.AT_MOST) {
                 measuredWidth = MeasureSpec.getSize(widthMeasureSpec);
-                measuredHeight = (int) ((measuredWidth - (mNumChars - 1 * mSpace)) / mNumChars);
+                measuredHeight = (int) computeSlotSize(measuredWidth);
             } else if (heightMode == MeasureSpec.AT_MOST) {
                 measuredHeight = MeasureSpec.getSize(heightMeasureSpec);
-                measuredWidth = (int) ((measuredHeight * mNumChars) + (mSpace * mNumChars - 1));
+                measuredWidth = (int) SlotLayout.measureWidth(measuredHeight, (int) mNumChars, mSpace, mGroupSize, mGroupSpace);
             } else {
                 // Both unspecific
                 // Try for a width based on our minimum
@@ -326,7 +886,7 @@ public class PinEntryEditText extends AppCompatEditText {
 
                 // Whatever the width ends up being, ask for a height that would let the pie
                 // get as big as it can
-                measuredHeight = (int) ((measuredWidth - (mNumChars - 1 * mSpace)) / mNumChars);
+                measuredHeight = (int) computeSlotSize(measuredWidth);
             }
 
             setMeasuredDimension(
@@ -349,116 +909,739 @@ public class PinEntryEditText extends AppCompatEditText {
     @Override
     protected void onDraw(Canvas canvas) {
         //super.onDraw(canvas);
-        CharSequence text = getFullText();
-        int textLength = text.length();
-        float[] textWidths = new float[textLength];
-        getPaint().getTextWidths(text, 0, textLength, textWidths);
-
-        float hintWidth = 0;
-        if (mSingleCharHint != null) {
-            float[] hintWidths = new float[mSingleCharHint.length()];
-            getPaint().getTextWidths(mSingleCharHint, hintWidths);
-            for (float i : hintWidths) {
-                hintWidth += i;
+        TraceCompat.beginSection("PinEntryEditText.onDraw");
+        try {
+            if (mMetricsListener == null) {
+                drawSlots(canvas);
+                return;
             }
-        }
-        for (int i = 0; i < mNumChars; i++) {
-            //If a background for the pin characters is specified, it should be behind the characters.
-            if (mPinBackground != null) {
-                updateDrawableState(i < textLength, i == textLength);
-                mPinBackground.setBounds((int) mLineCoords[i].left, (int) mLineCoords[i].top, (int) mLineCoords[i].right, (int) mLineCoords[i].bottom);
-                mPinBackground.draw(canvas);
+            long start = System.nanoTime();
+            int slotsDrawn = drawSlots(canvas);
+            long end = System.nanoTime();
+            mMetricsListener.onDraw(end - start, slotsDrawn);
+            if (mKeystrokeTime != 0) {
+                mMetricsListener.onKeystrokeToFrame(end - mKeystrokeTime);
+                mKeystrokeTime = 0;
             }
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * @return the number of slots drawn, slots outside of the dirty region are skipped.
+     */
+    private int drawSlots(Canvas canvas) {
+        if (mLineCoords == null) {
+            return 0;
+        }
+        CharSequence text = getFullText();
+        //Each slot takes charsPerSlot characters of text, multi-character masks take more than one
+        int charsPerSlot = TextUtils.isEmpty(mMask) ? 1 : mMask.length();
+        int textLength = getPinText().length();
+        if (mTextWidthsDirty) {
+            updateTextWidths(text, textLength);
+        }
+        float[] textWidths = mTextWidths;
+        float hintWidth = mHintWidth;
+        float slotMargin = getSlotMargin();
+        int height = getHeight();
+        if (mGlyphCacheEnabled) {
+            prepareGlyphAtlases();
+        }
+        boolean scrollable = isScrollable();
+        if (scrollable) {
+            //Slots that are only partly visible mustn't draw over the padding
+            canvas.save();
+            canvas.clipRect(getPaddingLeft(), 0, getWidth() - getPaddingRight(), height);
+        }
+        boolean decorationCached = mDecorationCacheEnabled && prepareDecorationCache(textLength);
+        //If a background for the pin characters is specified, it should be behind the characters.
+        if (decorationCached && mPinBackground != null) {
+            canvas.drawBitmap(mDecorationCache, 0, 0, null);
+        }
+        //Slots outside of the dirty region haven't changed, no need to draw them again.
+        int first = mFirstVisibleSlot;
+        int end = mVisibleSlotEnd;
+        while (first < end && canvas.quickReject(mLineCoords[first].left - slotMargin, 0, mLineCoords[first].right + slotMargin, height, Canvas.EdgeType.BW)) {
+            first++;
+        }
+        while (end > first && canvas.quickReject(mLineCoords[end - 1].left - slotMargin, 0, mLineCoords[end - 1].right + slotMargin, height, Canvas.EdgeType.BW)) {
+            end--;
+        }
+        if (!decorationCached) {
+            updateSlotStates(first, end, textLength);
+        }
+        if (!decorationCached && mPinBackground != null) {
+            mSlotRenderer.drawDecorations(this, canvas, mSlotBounds, mSlotStates, first, end);
+        }
+        int staticCount = 0;
+        for (int i = first; i < end; i++) {
             float middle = mLineCoords[i].left + mCharSize / 2;
-            if (textLength > i) {
-                if (!mAnimate || i != textLength - 1) {
-                    canvas.drawText(text, i, i + 1, middle - textWidths[i] / 2, mCharBottom[i], mCharPaint);
+            if (textLength > i && mMaskShape != MASK_SHAPE_NONE) {
+                drawMaskShape(canvas, i, middle);
+            } else if (textLength > i) {
+                int charStart = i * charsPerSlot;
+                int charEnd = charStart + charsPerSlot;
+                mTextX[i] = middle - textWidths[i] / 2;
+                if (!mSlotAnimator.isAnimating(i)) {
+                    if (mGlyphCacheEnabled) {
+                        drawSlotText(canvas, text, charStart, charEnd, mTextX[i], mCharBottom[i], mCharPaint, mCharAtlas);
+                    } else {
+                        //Drawn together by the renderer below
+                        mStaticSlots[staticCount++] = i;
+                    }
+                } else if (mAnimatedType == ANIMATION_POP_IN) {
+                    //Pop in, the character grows from nothing to the full text size
+                    mLastCharPaint.setTextSize(1 + (mCharPaint.getTextSize() - 1) * mSlotAnimator.getInterpolatedFraction(i));
+                    drawSlotText(canvas, text, charStart, charEnd, mTextX[i], mCharBottom[i], mLastCharPaint, mCharAtlas);
                 } else {
-                    canvas.drawText(text, i, i + 1, middle - textWidths[i] / 2, mCharBottom[i], mLastCharPaint);
+                    //From bottom, the character fades in while moving up into place
+                    float offset = mCharPaint.getTextSize() * (1 - mSlotAnimator.getInterpolatedFraction(i));
+                    mLastCharPaint.setAlpha((int) (255 * mSlotAnimator.getFraction(i)));
+                    drawSlotText(canvas, text, charStart, charEnd, mTextX[i], mCharBottom[i] + offset, mLastCharPaint, mCharAtlas);
                 }
             } else if (mSingleCharHint != null) {
-                canvas.drawText(mSingleCharHint, middle - hintWidth / 2, mCharBottom[i], mSingleCharPaint);
-            }
-            //The lines should be in front of the text (because that's how I want it).
-            if (mPinBackground == null) {
-                updateColorForLines(i <= textLength);
-                canvas.drawLine(mLineCoords[i].left, mLineCoords[i].top, mLineCoords[i].right, mLineCoords[i].bottom, mLinesPaint);
+                drawSlotText(canvas, mSingleCharHint, 0, mSingleCharHint.length(), middle - hintWidth / 2, mCharBottom[i], mSingleCharPaint, mHintAtlas);
             }
         }
-    }
-
-    private CharSequence getFullText() {
-        if (TextUtils.isEmpty(mMask)) {
-            return getText();
-        } else {
-            return getMaskChars();
+        mSlotRenderer.drawCharacters(this, canvas, text, charsPerSlot, mStaticSlots, staticCount, mTextX, mCharBottom, mCharPaint);
+        //The lines should be in front of the text (because that's how I want it).
+        if (!decorationCached && mPinBackground == null) {
+            mSlotRenderer.drawDecorations(this, canvas, mSlotBounds, mSlotStates, first, end);
         }
+        if (decorationCached && mPinBackground == null) {
+            canvas.drawBitmap(mDecorationCache, 0, 0, null);
+        }
+        if (scrollable) {
+            canvas.restore();
+        }
+        return end - first;
     }
 
-    private StringBuilder getMaskChars() {
-        if (mMaskChars == null) {
-            mMaskChars = new StringBuilder();
-        }
-        int textLength = getText().length();
-        while (mMaskChars.length() != textLength) {
-            if (mMaskChars.length() < textLength) {
-                mMaskChars.append(mMask);
+    /**
+     * Draws the mask shape of a filled slot, animated the same way as characters.
+     */
+    private void drawMaskShape(Canvas canvas, int i, float middle) {
+        float size = mCharPaint.getTextSize() * MASK_SHAPE_SIZE;
+        float centerY = mCharBottom[i] - mTextHeight.height() / 2f;
+        float scale = 1;
+        Paint paint = mCharPaint;
+        if (mSlotAnimator.isAnimating(i)) {
+            paint = mLastCharPaint;
+            if (mAnimatedType == ANIMATION_POP_IN) {
+                scale = mSlotAnimator.getInterpolatedFraction(i);
             } else {
-                mMaskChars.deleteCharAt(mMaskChars.length() - 1);
+                centerY += mCharPaint.getTextSize() * (1 - mSlotAnimator.getInterpolatedFraction(i));
+                paint.setAlpha((int) (255 * mSlotAnimator.getFraction(i)));
+            }
+        }
+        float half = size * scale / 2;
+        if (mMaskShape == MASK_SHAPE_CIRCLE) {
+            canvas.drawCircle(middle, centerY, half, paint);
+        } else if (mMaskShape == MASK_SHAPE_SQUARE) {
+            canvas.drawRect(middle - half, centerY - half, middle + half, centerY + half, paint);
+        } else if (mMaskPath != null) {
+            if (mScaledMaskPathSize != size) {
+                //Scaled once per text size, only translated per slot
+                mMaskPath.computeBounds(mMaskPathBounds, true);
+                mMaskShapeBounds.set(-size / 2, -size / 2, size / 2, size / 2);
+                mMaskPathMatrix.setRectToRect(mMaskPathBounds, mMaskShapeBounds, Matrix.ScaleToFit.CENTER);
+                mMaskPath.transform(mMaskPathMatrix, mScaledMaskPath);
+                mScaledMaskPathSize = size;
             }
+            int saveCount = canvas.save();
+            canvas.translate(middle, centerY);
+            canvas.scale(scale, scale);
+            canvas.drawPath(mScaledMaskPath, paint);
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    private void updateSlotStates(int first, int end, int textLength) {
+        for (int i = first; i < end; i++) {
+            mSlotStates[i] = getSlotState(i < textLength, i == textLength);
         }
-        return mMaskChars;
     }
 
+    /**
+     * Replaces the renderer drawing the slot decorations and the characters that aren't
+     * animating, null restores the {@link DefaultSlotRenderer}.
+     */
+    public void setSlotRenderer(@Nullable SlotRenderer renderer) {
+        mSlotRenderer = renderer != null ? renderer : new DefaultSlotRenderer();
+        mDecorationDirty = true;
+        invalidate();
+    }
 
-    private int getColorForState(int... states) {
-        return mColorStates.getColorForState(states, Color.GRAY);
+    public SlotRenderer getSlotRenderer() {
+        return mSlotRenderer;
     }
 
     /**
-     * @param hasTextOrIsNext Is the color for a character that has been typed or is
-     *                        the next character to be typed?
+     * Draws the lines or backgrounds of all slots into the decoration cache, unless it is
+     * already up to date. They only depend on the size, focus, error and text length.
+     *
+     * @return false if the view has no size yet and nothing could be cached.
      */
-    protected void updateColorForLines(boolean hasTextOrIsNext) {
-        if (mHasError) {
-            mLinesPaint.setColor(getColorForState(android.R.attr.state_active));
-        } else if (isFocused()) {
-            mLinesPaint.setStrokeWidth(mLineStrokeSelected);
-            mLinesPaint.setColor(getColorForState(android.R.attr.state_focused));
-            if (hasTextOrIsNext) {
-                mLinesPaint.setColor(getColorForState(android.R.attr.state_selected));
-            }
+    private boolean prepareDecorationCache(int textLength) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        boolean focused = isFocused();
+        if (mDecorationCache != null && !mDecorationDirty
+                && mDecorationCache.getWidth() == width && mDecorationCache.getHeight() == height
+                && mDecorationFocused == focused && mDecorationError == mHasError
+                && mDecorationTextLength == textLength) {
+            return true;
+        }
+        if (mDecorationCache == null || mDecorationCache.getWidth() != width || mDecorationCache.getHeight() != height) {
+            recycleDecorationCache();
+            mDecorationCache = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mDecorationCanvas = new Canvas(mDecorationCache);
         } else {
-            mLinesPaint.setStrokeWidth(mLineStroke);
-            mLinesPaint.setColor(getColorForState(-android.R.attr.state_focused));
+            mDecorationCache.eraseColor(Color.TRANSPARENT);
         }
+        updateSlotStates(mFirstVisibleSlot, mVisibleSlotEnd, textLength);
+        mSlotRenderer.drawDecorations(this, mDecorationCanvas, mSlotBounds, mSlotStates, mFirstVisibleSlot, mVisibleSlotEnd);
+        mDecorationFocused = focused;
+        mDecorationError = mHasError;
+        mDecorationTextLength = textLength;
+        mDecorationDirty = false;
+        return true;
     }
 
-    protected void updateDrawableState(boolean hasText, boolean isNext) {
-        if (mHasError) {
-            mPinBackground.setState(new int[]{android.R.attr.state_active});
-        } else if (isFocused()) {
-            mPinBackground.setState(new int[]{android.R.attr.state_focused});
-            if (isNext) {
-                mPinBackground.setState(new int[]{android.R.attr.state_focused, android.R.attr.state_selected});
-            } else if (hasText) {
-                mPinBackground.setState(new int[]{android.R.attr.state_focused, android.R.attr.state_checked});
-            }
-        } else {
-            if (hasText) {
-                mPinBackground.setState(new int[]{-android.R.attr.state_focused, android.R.attr.state_checked});
-            } else {
-                mPinBackground.setState(new int[]{-android.R.attr.state_focused});
-            }
+    private void recycleDecorationCache() {
+        if (mDecorationCache != null) {
+            mDecorationCache.recycle();
+            mDecorationCache = null;
+            mDecorationCanvas = null;
         }
     }
 
-    public void setError(boolean hasError) {
-        mHasError = hasError;
+    /**
+     * When enabled, the lines or pin backgrounds of all slots are drawn once into a
+     * bitmap and redrawn only when the focus, error state, text length or size changes,
+     * instead of on every frame. Uses a bitmap the size of the view, disabled by default.
+     */
+    public void setDecorationCacheEnabled(boolean enabled) {
+        mDecorationCacheEnabled = enabled;
+        if (!enabled) {
+            recycleDecorationCache();
+        }
         invalidate();
     }
 
-    public boolean isError() {
+    /**
+     * Measures the width of each slot's text and the hint once, so that onDraw doesn't
+     * have to allocate or measure on every frame. Called when the text, mask, hint,
+     * typeface or text size has changed.
+     */
+    private void updateTextWidths(CharSequence text, int textLength) {
+        if (mTextWidths.length < textLength) {
+            mTextWidths = new float[Math.max(textLength, mMaxLength)];
+        }
+        if (mMaskShape != MASK_SHAPE_NONE) {
+            //Mask shapes are drawn centered, there is no text to measure
+        } else if (text instanceof MaskedText) {
+            //Every slot shows the same mask, measure it once
+            float maskWidth = measureWidth(mMask);
+            for (int i = 0; i < textLength; i++) {
+                mTextWidths[i] = maskWidth;
+            }
+        } else if (hasSurrogates(text, textLength)) {
+            getPaint().getTextWidths(text, 0, textLength, mTextWidths);
+        } else {
+            for (int i = 0; i < textLength; i++) {
+                mTextWidths[i] = mGlyphWidths.getWidth(text.charAt(i), getPaint());
+            }
+        }
+
+        mHintWidth = 0;
+        if (mSingleCharHint != null) {
+            mHintWidth = measureWidth(mSingleCharHint);
+        }
+        mTextWidthsDirty = false;
+    }
+
+    private float measureWidth(String str) {
+        if (str.length() == 1 && !Character.isSurrogate(str.charAt(0))) {
+            return mGlyphWidths.getWidth(str.charAt(0), getPaint());
+        }
+        return getPaint().measureText(str);
+    }
+
+    private static boolean hasSurrogates(CharSequence text, int length) {
+        for (int i = 0; i < length; i++) {
+            if (Character.isSurrogate(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drawSlotText(Canvas canvas, CharSequence text, int start, int end, float x, float y, Paint paint, GlyphAtlas atlas) {
+        //While the last character is animating its paint differs from the atlas, draw it as text.
+        if (atlas == null || !atlas.isValidFor(paint) || !atlas.draw(canvas, text, start, end, x, y)) {
+            canvas.drawText(text, start, end, x, y, paint);
+        }
+    }
+
+    private void prepareGlyphAtlases() {
+        if (mCharGlyphs == null) {
+            mCharGlyphs = DIGITS;
+            if (!TextUtils.isEmpty(mMask) && mMaskShape == MASK_SHAPE_NONE) {
+                mCharGlyphs = new String[DIGITS.length + 1];
+                System.arraycopy(DIGITS, 0, mCharGlyphs, 0, DIGITS.length);
+                mCharGlyphs[DIGITS.length] = mMask;
+            }
+        }
+        if (mHintGlyphs == null && mSingleCharHint != null) {
+            mHintGlyphs = new String[]{mSingleCharHint};
+        }
+        if (mGroup != null) {
+            //The group keeps one atlas per paint configuration and glyph set for all its members
+            mCharAtlas = mGroup.obtainAtlas(mCharPaint, mCharGlyphs);
+            mHintAtlas = mSingleCharHint != null ? mGroup.obtainAtlas(mSingleCharPaint, mHintGlyphs) : null;
+            return;
+        }
+
+        if (mCharAtlas == null) {
+            mCharAtlas = new GlyphAtlas();
+        }
+        if (!mCharAtlas.isValidFor(mCharPaint)) {
+            mCharAtlas.build(mCharPaint, mCharGlyphs);
+        }
+
+        if (mSingleCharHint == null) {
+            return;
+        }
+        if (mHintAtlas == null) {
+            mHintAtlas = new GlyphAtlas();
+        }
+        if (!mHintAtlas.isValidFor(mSingleCharPaint)) {
+            mHintAtlas.build(mSingleCharPaint, mHintGlyphs);
+        }
+    }
+
+    /**
+     * Drops the glyph atlases, they are rebuilt on the next draw. Atlases shared through a
+     * {@link PinEntryGroup} belong to the group and are only let go of, not recycled.
+     */
+    private void recycleGlyphAtlases() {
+        mCharGlyphs = null;
+        mHintGlyphs = null;
+        if (mGroup != null) {
+            mCharAtlas = null;
+            mHintAtlas = null;
+            return;
+        }
+        if (mCharAtlas != null) {
+            mCharAtlas.recycle();
+        }
+        if (mHintAtlas != null) {
+            mHintAtlas.recycle();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mSlotAnimator.cancel();
+        //The animation won't end anymore, the completed pin still has to be reported
+        flushPendingPinEntered();
+        cancelVerification();
+        recycleGlyphAtlases();
+        recycleDecorationCache();
+        cancelErrorFeedback();
+    }
+
+    /**
+     * Invalidates only the area covered by the slots from {@code start} (inclusive)
+     * to {@code end} (exclusive) instead of the whole view.
+     */
+    protected void invalidateSlots(int start, int end) {
+        if (mLineCoords == null) {
+            invalidate();
+            return;
+        }
+        //Slots outside of the viewport aren't laid out and don't need redrawing
+        start = Math.max(start, mFirstVisibleSlot);
+        end = Math.min(end, mVisibleSlotEnd);
+        if (start >= end) {
+            return;
+        }
+        float left = mLineCoords[start].left;
+        float right = mLineCoords[start].right;
+        for (int i = start + 1; i < end; i++) {
+            left = Math.min(left, mLineCoords[i].left);
+            right = Math.max(right, mLineCoords[i].right);
+        }
+        float slotMargin = getSlotMargin();
+        invalidate((int) (left - slotMargin), 0, (int) Math.ceil(right + slotMargin), getHeight());
+    }
+
+    protected void invalidateSlot(int index) {
+        invalidateSlots(index, index + 1);
+    }
+
+    /**
+     * Characters and the selected line stroke can spill a little outside of the slot,
+     * this is how far the dirty region of a slot extends on either side.
+     */
+    private float getSlotMargin() {
+        return Math.max(mSpace, 0) / 2 + mLineStrokeSelected;
+    }
+
+    private CharSequence getFullText() {
+        CharSequence text = getPinText();
+        if (TextUtils.isEmpty(mMask)) {
+            return text;
+        }
+        if (mMaskedText == null || mMaskedText.getSource() != text) {
+            mMaskedText = new MaskedText(text, mMask);
+        }
+        return mMaskedText;
+    }
+
+    /**
+     * Replaces the characters in the Editable with placeholders, the real characters
+     * have already been copied into the secure buffer by onTextChanged.
+     */
+    private void scrubText(Editable editable) {
+        if (mScrubbingText) {
+            return;
+        }
+        mScrubbingText = true;
+        for (int i = 0; i < editable.length(); i++) {
+            if (editable.charAt(i) != SECURE_PLACEHOLDER) {
+                editable.replace(i, i + 1, SECURE_PLACEHOLDER_STRING);
+            }
+        }
+        mScrubbingText = false;
+    }
+
+    /**
+     * Runs the verifier on its executor with a wipeable copy of the pin, the result
+     * is posted back to the main thread unless the text changes in the meantime. A verifier
+     * that throws, or an executor that rejects the check, counts as a failed verification.
+     */
+    private void startVerification() {
+        cancelVerification();
+        final CancellationSignal signal = new CancellationSignal();
+        final PinVerifier verifier = mPinVerifier;
+        final PinBuffer pin = new PinBuffer(mMaxLength);
+        CharSequence text = getPinText();
+        pin.replace(0, 0, text, 0, text.length());
+        if (mMainHandler == null) {
+            mMainHandler = new Handler(Looper.getMainLooper());
+        }
+        mVerification = signal;
+        try {
+            mVerifierExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean verified = false;
+                    try {
+                        verified = verifier.verify(pin, signal);
+                    } catch (RuntimeException e) {
+                        //Reported as a failed verification, the UI mustn't be left waiting
+                    } finally {
+                        pin.wipe();
+                    }
+                    postVerificationResult(signal, verified);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //e.g. the executor has been shut down, this mustn't throw out of onTextChanged
+            pin.wipe();
+            postVerificationResult(signal, false);
+        }
+    }
+
+    private void postVerificationResult(final CancellationSignal signal, final boolean verified) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (signal.isCanceled() || signal != mVerification) {
+                    return;
+                }
+                mVerification = null;
+                if (!verified) {
+                    setError(true);
+                }
+                if (mOnPinVerifiedListener != null) {
+                    mOnPinVerifiedListener.onPinVerified(verified);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels the verification in progress, if any. Its result will be ignored.
+     */
+    public void cancelVerification() {
+        if (mVerification != null) {
+            mVerification.cancel();
+            mVerification = null;
+        }
+    }
+
+    /**
+     * Dispatches onPinEntered right away if it was waiting for an animation to end.
+     */
+    private void flushPendingPinEntered() {
+        if (mPinEnteredSlot != -1 && getPinText().length() == mMaxLength) {
+            dispatchPinEntered();
+        }
+        mPinEnteredSlot = -1;
+    }
+
+    /**
+     * Reports a completed pin, at most once until the text changes again.
+     */
+    private void dispatchPinEntered() {
+        mPinEnteredSlot = -1;
+        if (mPinEnteredDispatched) {
+            return;
+        }
+        mPinEnteredDispatched = true;
+        if (mPinVerifier != null) {
+            startVerification();
+        }
+        if (mMetricsListener != null && mEntryStartTime != 0) {
+            mMetricsListener.onPinEntryTime(System.nanoTime() - mEntryStartTime);
+            mEntryStartTime = 0;
+        }
+        if (mOnPinEnteredListener != null) {
+            mOnPinEnteredListener.onPinEntered(getPinText());
+        }
+        if (mGroup != null) {
+            mGroup.onPinEntered(this);
+        }
+    }
+
+    /**
+     * Called by {@link PinEntryGroup} when this view joins or leaves it. Group members share
+     * the group's animation clock and glyph caches instead of keeping their own.
+     */
+    void setGroup(@Nullable PinEntryGroup group) {
+        recycleGlyphAtlases();
+        mGroup = group;
+        mCharAtlas = null;
+        mHintAtlas = null;
+        mSlotAnimator.setClock(group != null ? group.mClock : null);
+        mGlyphWidths = group != null ? group.mGlyphWidths : new GlyphWidthCache();
+        mTextWidthsDirty = true;
+        invalidate();
+    }
+
+    /**
+     * @return one of the SLOT_STATE constants for a slot.
+     */
+    protected int getSlotState(boolean hasText, boolean isNext) {
+        if (mHasError) {
+            return SLOT_STATE_ERROR;
+        } else if (isFocused()) {
+            if (isNext) {
+                return SLOT_STATE_FOCUSED_NEXT;
+            }
+            return hasText ? SLOT_STATE_FOCUSED_FILLED : SLOT_STATE_FOCUSED_EMPTY;
+        }
+        return hasText ? SLOT_STATE_UNFOCUSED_FILLED : SLOT_STATE_UNFOCUSED_EMPTY;
+    }
+
+    /**
+     * Resolves the line color and stroke of every slot state once, so drawing a line
+     * is a table lookup. Called lazily after the line colors or strokes change.
+     */
+    protected void updateSlotStateTables() {
+        int selected = mColorStates.getColorForState(STATE_SET_SELECTED, Color.GRAY);
+        int focused = mColorStates.getColorForState(STATE_SET_FOCUSED, Color.GRAY);
+        int unfocused = mColorStates.getColorForState(STATE_SET_UNFOCUSED, Color.GRAY);
+        mLineColorTable[SLOT_STATE_ERROR] = mColorStates.getColorForState(STATE_SET_ERROR, Color.GRAY);
+        mLineColorTable[SLOT_STATE_FOCUSED_EMPTY] = focused;
+        mLineColorTable[SLOT_STATE_FOCUSED_NEXT] = selected;
+        mLineColorTable[SLOT_STATE_FOCUSED_FILLED] = selected;
+        mLineColorTable[SLOT_STATE_UNFOCUSED_EMPTY] = unfocused;
+        mLineColorTable[SLOT_STATE_UNFOCUSED_FILLED] = unfocused;
+
+        mLineStrokeTable[SLOT_STATE_ERROR] = mLineStrokeSelected;
+        mLineStrokeTable[SLOT_STATE_FOCUSED_EMPTY] = mLineStrokeSelected;
+        mLineStrokeTable[SLOT_STATE_FOCUSED_NEXT] = mLineStrokeSelected;
+        mLineStrokeTable[SLOT_STATE_FOCUSED_FILLED] = mLineStrokeSelected;
+        mLineStrokeTable[SLOT_STATE_UNFOCUSED_EMPTY] = mLineStroke;
+        mLineStrokeTable[SLOT_STATE_UNFOCUSED_FILLED] = mLineStroke;
+
+        mLinesPaintState = -1;
+        mSlotStateTablesDirty = false;
+    }
+
+    /**
+     * Sets the color and stroke of the lines paint for a slot state, the paint is
+     * left alone if it is already set up for that state.
+     */
+    protected void applyLineState(int slotState) {
+        if (mSlotStateTablesDirty) {
+            updateSlotStateTables();
+        }
+        if (mLinesPaintState != slotState) {
+            mLinesPaint.setColor(mLineColorTable[slotState]);
+            mLinesPaint.setStrokeWidth(mLineStrokeTable[slotState]);
+            mLinesPaintState = slotState;
+        }
+    }
+
+    /**
+     * @param hasTextOrIsNext Is the color for a character that has been typed or is
+     *                        the next character to be typed?
+     */
+    protected void updateColorForLines(boolean hasTextOrIsNext) {
+        applyLineState(getSlotState(hasTextOrIsNext, false));
+    }
+
+    protected void updateDrawableState(boolean hasText, boolean isNext) {
+        applyDrawableState(mPinBackground, getSlotState(hasText, isNext));
+    }
+
+    /**
+     * Sets the drawable state of a slot state on {@code background}. The state sets are
+     * interned, so setState is skipped when the drawable is already in that state.
+     */
+    protected void applyDrawableState(Drawable background, int slotState) {
+        int[] stateSet = DRAWABLE_STATE_SETS[slotState];
+        if (background.getState() != stateSet) {
+            background.setState(stateSet);
+        }
+    }
+
+    /**
+     * When enabled, every slot gets its own mutated copy of the pin background which keeps
+     * its state and bounds between frames, instead of cycling one drawable through every
+     * slot. Only applies to drawables with a constant state.
+     */
+    public void setPinBackgroundPerSlot(boolean perSlot) {
+        mPinBackgroundPerSlot = perSlot;
+        mSlotBackgrounds = null;
+        mDecorationDirty = true;
+        invalidate();
+    }
+
+    /**
+     * @return the pin background of {@code slot} in the drawable state of {@code slotState},
+     * or null if there is no pin background.
+     */
+    @Nullable
+    public Drawable getSlotBackground(int slot, int slotState) {
+        if (mPinBackground == null) {
+            return null;
+        }
+        Drawable background = getSlotBackground(slot);
+        applyDrawableState(background, slotState);
+        return background;
+    }
+
+    /**
+     * @return the line color of a slot state.
+     */
+    public int getLineColor(int slotState) {
+        if (mSlotStateTablesDirty) {
+            updateSlotStateTables();
+        }
+        return mLineColorTable[slotState];
+    }
+
+    /**
+     * @return the line stroke of a slot state.
+     */
+    public float getLineStroke(int slotState) {
+        if (mSlotStateTablesDirty) {
+            updateSlotStateTables();
+        }
+        return mLineStrokeTable[slotState];
+    }
+
+    private Drawable getSlotBackground(int i) {
+        if (!mPinBackgroundPerSlot || mPinBackground.getConstantState() == null) {
+            return mPinBackground;
+        }
+        if (mSlotBackgrounds == null || mSlotBackgrounds.length != mLineCoords.length) {
+            mSlotBackgrounds = new Drawable[mLineCoords.length];
+            Drawable.ConstantState state = mPinBackground.getConstantState();
+            for (int j = 0; j < mSlotBackgrounds.length; j++) {
+                mSlotBackgrounds[j] = state.newDrawable(getResources()).mutate();
+            }
+        }
+        return mSlotBackgrounds[i];
+    }
+
+    public void setError(boolean hasError) {
+        if (mHasError == hasError) {
+            return;
+        }
+        mHasError = hasError;
+        invalidate();
+        if (hasError) {
+            startErrorFeedback();
+        } else {
+            cancelErrorFeedback();
+        }
+    }
+
+    /**
+     * @param errorFeedback {@link #ERROR_FEEDBACK_NONE} (the default), {@link #ERROR_FEEDBACK_SHAKE}
+     *                      or {@link #ERROR_FEEDBACK_FLASH}, played when the error is set.
+     */
+    public void setErrorFeedback(int errorFeedback) {
+        mErrorFeedback = errorFeedback;
+    }
+
+    /**
+     * Shakes or flashes the whole view by animating its translation or alpha. These are
+     * render properties, so no frame of the animation calls onDraw and, on hardware
+     * accelerated windows, the frames don't wait for the UI thread.
+     */
+    private void startErrorFeedback() {
+        if (mErrorFeedback == ERROR_FEEDBACK_NONE) {
+            return;
+        }
+        cancelErrorFeedback();
+        mErrorFeedbackRunning = true;
+        if (mErrorFeedback == ERROR_FEEDBACK_SHAKE) {
+            //A cycle interpolator swings both ways and ends back at 0
+            float distance = ERROR_SHAKE_DISTANCE * getResources().getDisplayMetrics().density;
+            ViewCompat.animate(this)
+                    .translationX(distance)
+                    .setInterpolator(new CycleInterpolator(3))
+                    .setDuration(ERROR_SHAKE_DURATION_MS)
+                    .start();
+        } else {
+            //Half a cycle fades out and back in
+            ViewCompat.animate(this)
+                    .alpha(ERROR_FLASH_ALPHA)
+                    .setInterpolator(new CycleInterpolator(0.5f))
+                    .setDuration(ERROR_FLASH_DURATION_MS)
+                    .start();
+        }
+    }
+
+    /**
+     * Stops the error feedback and puts the view back in place, only if it is running so
+     * translations or alpha set by the app are left alone.
+     */
+    private void cancelErrorFeedback() {
+        if (!mErrorFeedbackRunning) {
+            return;
+        }
+        mErrorFeedbackRunning = false;
+        ViewCompat.animate(this).cancel();
+        setTranslationX(0);
+        setAlpha(1);
+    }
+
+    public boolean isError() {
         return mHasError;
     }
 
@@ -486,7 +1669,22 @@ public class PinEntryEditText extends AppCompatEditText {
         setCustomTypeface(tf);
     }
 
+    @Override
+    public void setTextSize(int unit, float size) {
+        super.setTextSize(unit, size);
+        if (mGlyphWidths != null) {
+            mGlyphWidths.clear();
+        }
+        mTextWidthsDirty = true;
+        recycleGlyphAtlases();
+    }
+
     private void setCustomTypeface(@Nullable Typeface tf) {
+        if (mGlyphWidths != null) {
+            mGlyphWidths.clear();
+        }
+        mTextWidthsDirty = true;
+        recycleGlyphAtlases();
         if (mCharPaint != null) {
             mCharPaint.setTypeface(tf);
             mLastCharPaint.setTypeface(tf);
@@ -497,122 +1695,116 @@ public class PinEntryEditText extends AppCompatEditText {
 
     public void setPinLineColors(ColorStateList colors) {
         mColorStates = colors;
+        mSlotStateTablesDirty = true;
+        mDecorationDirty = true;
         invalidate();
     }
 
     public void setPinBackground(Drawable pinBackground) {
         mPinBackground = pinBackground;
+        mSlotBackgrounds = null;
+        mDecorationDirty = true;
+        if (mLineCoords != null) {
+            updateSlotGeometry();
+        }
         invalidate();
     }
 
     @Override
     protected void onTextChanged(CharSequence text, final int start, int lengthBefore, final int lengthAfter) {
-        setError(false);
-        if (mLineCoords == null || !mAnimate) {
-            if (mOnPinEnteredListener != null && text.length() == mMaxLength) {
-                mOnPinEnteredListener.onPinEntered(text);
-            }
+        if (mScrubbingText) {
+            //Only placeholders are replacing the characters already copied to the buffer
             return;
         }
-
-        if (mAnimatedType == -1) {
-            invalidate();
+        if (mFastInput) {
+            //Keystrokes don't reach the Editable, it only changes when the app sets the text
+            int oldLength = mPinBuffer.length();
+            mPinBuffer.replace(0, oldLength, text, 0, text.length());
+            dispatchTextChanged(mPinBuffer, 0, oldLength, mPinBuffer.length());
+            reportFastInputChanged();
             return;
         }
-
-        if (lengthAfter > lengthBefore) {
-            if (mAnimatedType == 0) {
-                animatePopIn();
-            } else {
-                animateBottomUp(text, start);
-            }
+        if (mSecureInput) {
+            mPinBuffer.replace(start, start + lengthBefore, text, start, start + lengthAfter);
+            text = mPinBuffer;
         }
+        dispatchTextChanged(text, start, lengthBefore, lengthAfter);
     }
 
-    private void animatePopIn() {
-        ValueAnimator va = ValueAnimator.ofFloat(1, getPaint().getTextSize());
-        va.setDuration(200);
-        va.setInterpolator(new OvershootInterpolator());
-        va.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                mLastCharPaint.setTextSize((Float) animation.getAnimatedValue());
-                PinEntryEditText.this.invalidate();
+    private void dispatchTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        //The pin being verified isn't the pin anymore
+        cancelVerification();
+        mTextWidthsDirty = true;
+        if (mMetricsListener != null) {
+            mKeystrokeTime = System.nanoTime();
+            if (text.length() == 0) {
+                mEntryStartTime = 0;
+            } else if (mEntryStartTime == 0) {
+                mEntryStartTime = mKeystrokeTime;
             }
-        });
-        if (getText().length() == mMaxLength && mOnPinEnteredListener != null) {
-            va.addListener(new Animator.AnimatorListener() {
-                @Override
-                public void onAnimationStart(Animator animation) {
-                }
-
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    mOnPinEnteredListener.onPinEntered(getText());
-                }
-
-                @Override
-                public void onAnimationCancel(Animator animation) {
-                }
-
-                @Override
-                public void onAnimationRepeat(Animator animation) {
-                }
-            });
         }
-        va.start();
+        TraceCompat.beginSection("PinEntryEditText.onTextChanged");
+        try {
+            onPinTextChanged(text, start, lengthBefore, lengthAfter);
+        } finally {
+            TraceCompat.endSection();
+        }
     }
 
-    private void animateBottomUp(CharSequence text, final int start) {
-        mCharBottom[start] = mLineCoords[start].bottom - mTextBottomPadding;
-        ValueAnimator animUp = ValueAnimator.ofFloat(mCharBottom[start] + getPaint().getTextSize(), mCharBottom[start]);
-        animUp.setDuration(300);
-        animUp.setInterpolator(new OvershootInterpolator());
-        animUp.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                Float value = (Float) animation.getAnimatedValue();
-                mCharBottom[start] = value;
-                PinEntryEditText.this.invalidate();
-            }
-        });
-
-        mLastCharPaint.setAlpha(255);
-        ValueAnimator animAlpha = ValueAnimator.ofInt(0, 255);
-        animAlpha.setDuration(300);
-        animAlpha.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                Integer value = (Integer) animation.getAnimatedValue();
-                mLastCharPaint.setAlpha(value);
+    private void onPinTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        //Any edit starts a new entry
+        mPinEnteredSlot = -1;
+        mPinEnteredDispatched = false;
+        setError(false);
+        //Keep the next slot (or the last one once the pin is complete) in view
+        scrollToSlot(text.length());
+        // The changed characters and the slot after them (which may now be the next one) need redrawing.
+        invalidateSlots(start, start + Math.max(lengthBefore, lengthAfter) + 1);
+        if (mLineCoords == null || !mAnimate || mAnimatedType == ANIMATION_NONE) {
+            if (text.length() == mMaxLength) {
+                dispatchPinEntered();
             }
-        });
-
-        AnimatorSet set = new AnimatorSet();
-        if (text.length() == mMaxLength && mOnPinEnteredListener != null) {
-            set.addListener(new Animator.AnimatorListener() {
-
-                @Override
-                public void onAnimationStart(Animator animation) {
-                }
+            return;
+        }
 
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    mOnPinEnteredListener.onPinEntered(getText());
-                }
+        //Deleted characters stop animating
+        for (int i = text.length(); i < start + lengthBefore; i++) {
+            mSlotAnimator.cancel(i);
+        }
 
-                @Override
-                public void onAnimationCancel(Animator animation) {
+        if (lengthAfter > lengthBefore) {
+            //Everything inserted at once (paste, autofill, setText) animates on one staggered timeline
+            mSlotAnimator.setDuration(mAnimatedType == ANIMATION_POP_IN ? 200 : 300);
+            for (int i = 0; i < lengthAfter; i++) {
+                mSlotAnimator.start(start + i, i * INSERT_STAGGER_MS);
+                if (mMetricsListener != null) {
+                    mMetricsListener.onAnimationStart(start + i, SystemClock.uptimeMillis() + i * INSERT_STAGGER_MS);
                 }
+            }
+        }
 
-                @Override
-                public void onAnimationRepeat(Animator animation) {
+        if (text.length() == mMaxLength) {
+            //The last inserted character finishes last
+            int lastSlot = start + lengthAfter - 1;
+            if (mPinEnteredDispatchMode == DISPATCH_IMMEDIATELY || !mSlotAnimator.isAnimating(lastSlot)) {
+                dispatchPinEntered();
+            } else {
+                mPinEnteredSlot = lastSlot;
+            }
+        }
+    }
 
-                }
-            });
+    /**
+     * @param mode {@link #DISPATCH_AFTER_ANIMATION} (the default) reports a completed pin once
+     *             the last character has finished animating, {@link #DISPATCH_IMMEDIATELY}
+     *             reports it as soon as the last character is entered, while it animates.
+     *             Either way onPinEntered is called exactly once per completed pin.
+     */
+    public void setPinEnteredDispatchMode(int mode) {
+        mPinEnteredDispatchMode = mode;
+        if (mode == DISPATCH_IMMEDIATELY) {
+            flushPendingPinEntered();
         }
-        set.playTogether(animUp, animAlpha);
-        set.start();
     }
 
     public void setAnimateText(boolean animate) {
@@ -623,7 +1815,85 @@ public class PinEntryEditText extends AppCompatEditText {
         mOnPinEnteredListener = l;
     }
 
+    /**
+     * Verifies the pin on {@code executor} whenever it has been entered completely, so
+     * slow checks (key derivation, network calls) don't block the main thread. A failed
+     * verification sets the error state, the result is reported to the
+     * {@link OnPinVerifiedListener}. Editing the text cancels the verification in progress.
+     */
+    public void setPinVerifier(@Nullable PinVerifier verifier, @Nullable Executor executor) {
+        if (verifier != null && executor == null) {
+            throw new IllegalArgumentException("An executor is required to run the verifier.");
+        }
+        cancelVerification();
+        mPinVerifier = verifier;
+        mVerifierExecutor = executor;
+    }
+
+    public void setOnPinVerifiedListener(@Nullable OnPinVerifiedListener l) {
+        mOnPinVerifiedListener = l;
+    }
+
+    /**
+     * Reports what drawing, animating and entering a pin costs, e.g. for production
+     * monitoring. Nothing is measured while no listener is set.
+     */
+    public void setMetricsListener(@Nullable MetricsListener l) {
+        mMetricsListener = l;
+        mKeystrokeTime = 0;
+        mEntryStartTime = 0;
+    }
+
     public interface OnPinEnteredListener {
         void onPinEntered(CharSequence str);
     }
-}
\ No newline at end of file
+
+    public interface PinVerifier {
+        /**
+         * Called on the verifier's executor, never on the main thread.
+         *
+         * @param pin    a copy of the pin, wiped as soon as this method returns
+         * @param signal canceled when the text changes, long running checks should stop early
+         * @return true if the pin is correct, a verifier that throws fails the verification
+         */
+        @WorkerThread
+        boolean verify(CharSequence pin, CancellationSignal signal);
+    }
+
+    public interface OnPinVerifiedListener {
+        @MainThread
+        void onPinVerified(boolean verified);
+    }
+
+    /**
+     * Performance metrics of a {@link PinEntryEditText}, all callbacks are made on the main thread.
+     */
+    public interface MetricsListener {
+        /**
+         * @param durationNanos how long onDraw took
+         * @param slotsDrawn    number of slots drawn, slots outside of the dirty region are skipped
+         */
+        void onDraw(long durationNanos, int slotsDrawn);
+
+        /**
+         * @param uptimeMillis {@link SystemClock#uptimeMillis()} when the slot started animating
+         */
+        void onAnimationStart(int slot, long uptimeMillis);
+
+        /**
+         * @param uptimeMillis  {@link SystemClock#uptimeMillis()} when the slot stopped animating
+         * @param droppedFrames number of frames skipped during the animation
+         */
+        void onAnimationEnd(int slot, long uptimeMillis, int droppedFrames);
+
+        /**
+         * @param latencyNanos time from a change to the text to the end of the next onDraw
+         */
+        void onKeystrokeToFrame(long latencyNanos);
+
+        /**
+         * @param durationNanos time from the first character being entered to {@link OnPinEnteredListener#onPinEntered}
+         */
+        void onPinEntryTime(long durationNanos);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.graphics.Paint;
+
+import java.util.ArrayList;
+
+/**
+ * Coordinates the fields of a multi-step flow, e.g. old PIN, new PIN and confirmation.
+ * <p/>
+ * Once a field's pin is entered, focus moves to the next field that isn't complete. Only
+ * focus moves, so the soft keyboard that is already showing stays up. The fields share
+ * a single frame callback for their animations and their glyph caches, fields drawing the
+ * same glyphs with the same paint use the same atlas.
+ */
+public final class PinEntryGroup {
+    final FrameClock mClock = new FrameClock();
+    final GlyphWidthCache mGlyphWidths = new GlyphWidthCache();
+    private static final int MAX_ATLASES = 8;
+
+    //Most recently built last
+    private final ArrayList<GlyphAtlas> mAtlases = new ArrayList<>();
+    private final ArrayList<PinEntryEditText> mFields = new ArrayList<>();
+    private OnGroupEnteredListener mOnGroupEnteredListener = null;
+
+    public PinEntryGroup(PinEntryEditText... fields) {
+        for (PinEntryEditText field : fields) {
+            add(field);
+        }
+    }
+
+    /**
+     * Adds a field after the ones already in the group, removing it from its previous group.
+     */
+    public void add(PinEntryEditText field) {
+        if (field.mGroup != null) {
+            field.mGroup.remove(field);
+        }
+        mFields.add(field);
+        field.setGroup(this);
+    }
+
+    public void remove(PinEntryEditText field) {
+        if (mFields.remove(field)) {
+            field.setGroup(null);
+        }
+    }
+
+    public int size() {
+        return mFields.size();
+    }
+
+    public PinEntryEditText get(int index) {
+        return mFields.get(index);
+    }
+
+    public void setOnGroupEnteredListener(OnGroupEnteredListener l) {
+        mOnGroupEnteredListener = l;
+    }
+
+    /**
+     * Compares the pins of two fields, e.g. a new pin and its confirmation, character by
+     * character on their buffers without copying either into a String.
+     */
+    public boolean pinsMatch(int first, int second) {
+        CharSequence a = get(first).getPinText();
+        CharSequence b = get(second).getPinText();
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wipes every field and moves focus back to the first one.
+     */
+    public void reset() {
+        for (int i = 0; i < mFields.size(); i++) {
+            mFields.get(i).wipe();
+        }
+        if (!mFields.isEmpty()) {
+            mFields.get(0).requestFocus();
+        }
+    }
+
+    /**
+     * Recycles the glyph atlases shared by the fields, call this once the fields are gone.
+     * They are rebuilt if a field draws again.
+     */
+    public void release() {
+        for (int i = 0; i < mAtlases.size(); i++) {
+            mAtlases.get(i).recycle();
+        }
+        mAtlases.clear();
+    }
+
+    /**
+     * @return an atlas of {@code glyphs} rasterized with the configuration of {@code paint},
+     * shared by every field drawing the same glyphs with the same paint configuration. Only
+     * the last {@link #MAX_ATLASES} configurations are kept, the oldest atlas is rebuilt.
+     */
+    GlyphAtlas obtainAtlas(Paint paint, String[] glyphs) {
+        for (int i = 0; i < mAtlases.size(); i++) {
+            GlyphAtlas atlas = mAtlases.get(i);
+            if (atlas.isValidFor(paint) && atlas.holds(glyphs)) {
+                return atlas;
+            }
+        }
+        GlyphAtlas atlas = mAtlases.size() < MAX_ATLASES ? new GlyphAtlas() : mAtlases.remove(0);
+        atlas.build(paint, glyphs);
+        mAtlases.add(atlas);
+        return atlas;
+    }
+
+    /**
+     * Called by a field once its pin is entered.
+     */
+    void onPinEntered(PinEntryEditText field) {
+        int index = mFields.indexOf(field);
+        int count = mFields.size();
+        //The next incomplete field, wrapping around to fields left incomplete before this one
+        for (int i = 1; i < count; i++) {
+            PinEntryEditText next = mFields.get((index + i) % count);
+            if (!isComplete(next)) {
+                next.requestFocus();
+                return;
+            }
+        }
+        if (mOnGroupEnteredListener != null) {
+            mOnGroupEnteredListener.onGroupEntered(this);
+        }
+    }
+
+    private static boolean isComplete(PinEntryEditText field) {
+        return field.getPinText().length() == field.mMaxLength;
+    }
+
+    public interface OnGroupEnteredListener {
+        /**
+         * Called when every field of the group has a complete pin.
+         */
+        void onGroupEntered(PinEntryGroup group);
+    }
+}
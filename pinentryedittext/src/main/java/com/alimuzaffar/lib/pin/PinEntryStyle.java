@@ -0,0 +1,351 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The resolved, immutable appearance of a {@link PinEntryEditText}: dimensions in pixels,
+ * line colors and the pin background. A style is resolved once per theme, configuration,
+ * style resource and set of inline pin attributes, and shared by every view inflated with
+ * the same ones, so inflating many views only costs their mutable state.
+ */
+public final class PinEntryStyle {
+    static final int[][] LINE_STATES = new int[][]{
+            new int[]{android.R.attr.state_selected}, // selected
+            new int[]{android.R.attr.state_active}, // error
+            new int[]{android.R.attr.state_focused}, // focused
+            new int[]{-android.R.attr.state_focused}, // unfocused
+    };
+
+    private static final Map<Resources.Theme, ThemeStyles> sCache = new WeakHashMap<>();
+
+    final int mAnimatedType;
+    final String mMask;
+    final int mMaskShape;
+    final String mSingleCharHint;
+    final float mLineStroke;
+    final float mLineStrokeSelected;
+    final float mSpace;
+    final float mTextBottomPadding;
+    final boolean mIsDigitSquare;
+    final int mErrorFeedback;
+    final Drawable.ConstantState mPinBackground;
+    //Only set for drawables without a constant state, which can't be cloned per view
+    final Drawable mPinBackgroundDrawable;
+    final ColorStateList mLineColors;
+    final int[] mDefaultColors;
+    final int mMaxLength;
+    final float mMinSlotSize;
+    final int mGroupSize;
+    final float mGroupSpace;
+
+    private PinEntryStyle(Builder builder) {
+        mAnimatedType = builder.mAnimatedType;
+        mMask = builder.mMask;
+        mMaskShape = builder.mMaskShape;
+        mSingleCharHint = builder.mSingleCharHint;
+        mLineStroke = builder.mLineStroke;
+        mLineStrokeSelected = builder.mLineStrokeSelected;
+        mSpace = builder.mSpace;
+        mTextBottomPadding = builder.mTextBottomPadding;
+        mIsDigitSquare = builder.mIsDigitSquare;
+        mErrorFeedback = builder.mErrorFeedback;
+        mPinBackground = builder.mPinBackground != null ? builder.mPinBackground.getConstantState() : null;
+        mPinBackgroundDrawable = mPinBackground == null ? builder.mPinBackground : null;
+        mDefaultColors = builder.mDefaultColors;
+        mLineColors = builder.mLineColors != null ? builder.mLineColors : new ColorStateList(LINE_STATES, mDefaultColors);
+        mMaxLength = builder.mMaxLength;
+        mMinSlotSize = builder.mMinSlotSize;
+        mGroupSize = builder.mGroupSize;
+        mGroupSpace = builder.mGroupSpace;
+    }
+
+    private static PinEntryStyle resolve(Context context, @Nullable AttributeSet attrs, boolean isInEditMode) {
+        Builder builder = new Builder(context, isInEditMode);
+        TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.PinEntryEditText, 0, 0);
+        try {
+            TypedValue outValue = new TypedValue();
+            ta.getValue(R.styleable.PinEntryEditText_pinAnimationType, outValue);
+            builder.mAnimatedType = outValue.data;
+            builder.mMask = ta.getString(R.styleable.PinEntryEditText_pinCharacterMask);
+            builder.mMaskShape = ta.getInt(R.styleable.PinEntryEditText_pinCharacterMaskShape, builder.mMaskShape);
+            builder.mSingleCharHint = ta.getString(R.styleable.PinEntryEditText_pinRepeatedHint);
+            builder.mLineStroke = ta.getDimension(R.styleable.PinEntryEditText_pinLineStroke, builder.mLineStroke);
+            builder.mLineStrokeSelected = ta.getDimension(R.styleable.PinEntryEditText_pinLineStrokeSelected, builder.mLineStrokeSelected);
+            builder.mSpace = ta.getDimension(R.styleable.PinEntryEditText_pinCharacterSpacing, builder.mSpace);
+            builder.mTextBottomPadding = ta.getDimension(R.styleable.PinEntryEditText_pinTextBottomPadding, builder.mTextBottomPadding);
+            builder.mIsDigitSquare = ta.getBoolean(R.styleable.PinEntryEditText_pinBackgroundIsSquare, builder.mIsDigitSquare);
+            builder.mErrorFeedback = ta.getInt(R.styleable.PinEntryEditText_pinErrorFeedback, builder.mErrorFeedback);
+            builder.mPinBackground = ta.getDrawable(R.styleable.PinEntryEditText_pinBackgroundDrawable);
+            builder.mLineColors = ta.getColorStateList(R.styleable.PinEntryEditText_pinLineColors);
+            builder.mMinSlotSize = ta.getDimension(R.styleable.PinEntryEditText_pinMinSlotSize, builder.mMinSlotSize);
+            builder.mGroupSize = ta.getInt(R.styleable.PinEntryEditText_pinGroupSize, builder.mGroupSize);
+            builder.mGroupSpace = ta.getDimension(R.styleable.PinEntryEditText_pinGroupSpacing, builder.mGroupSpace);
+        } finally {
+            ta.recycle();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the style for {@code attrs} in the context's theme. Styles are cached per theme
+     * and shared by views with the same style resource and the same pin attributes set inline.
+     * Inline values are compared as written, so {@code 8dp} and {@code @dimen/space} don't
+     * share a style even if they resolve to the same size. The cached styles of a theme are
+     * dropped when its configuration changes (night mode, orientation, density...). A pin
+     * background without a constant state can't be copied per view, styles using one are
+     * resolved for every view and never cached.
+     */
+    public static PinEntryStyle obtain(Context context, @Nullable AttributeSet attrs, boolean isInEditMode) {
+        if (isInEditMode) {
+            return resolve(context, attrs, true);
+        }
+        String key = cacheKey(attrs);
+        Resources.Theme theme = context.getTheme();
+        Configuration configuration = context.getResources().getConfiguration();
+        synchronized (sCache) {
+            ThemeStyles styles = sCache.get(theme);
+            //Activities handling configuration changes themselves keep their theme
+            if (styles == null || styles.mConfiguration.diff(configuration) != 0) {
+                styles = new ThemeStyles(configuration);
+                sCache.put(theme, styles);
+            }
+            PinEntryStyle style = styles.mStyles.get(key);
+            if (style == null) {
+                style = resolve(context, attrs, false);
+                //Views would share and mutate the same drawable
+                if (style.mPinBackgroundDrawable == null) {
+                    styles.mStyles.put(key, style);
+                }
+            }
+            return style;
+        }
+    }
+
+    /**
+     * @return the style resource of {@code attrs} followed by the pin attributes set inline
+     * and their values, as written in the layout.
+     */
+    private static String cacheKey(@Nullable AttributeSet attrs) {
+        if (attrs == null) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder().append(attrs.getStyleAttribute());
+        for (int i = 0; i < attrs.getAttributeCount(); i++) {
+            int name = attrs.getAttributeNameResource(i);
+            for (int attr : R.styleable.PinEntryEditText) {
+                if (name == attr) {
+                    key.append(';').append(name).append('=').append(attrs.getAttributeValue(i));
+                    break;
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return a new pin background for a single view, sharing its constant state with
+     * every other view using this style, or null if there is no pin background.
+     */
+    @Nullable
+    Drawable newPinBackground(Resources res) {
+        return mPinBackground != null ? mPinBackground.newDrawable(res) : mPinBackgroundDrawable;
+    }
+
+    /**
+     * The styles cached for a theme and the configuration they were resolved in.
+     */
+    private static final class ThemeStyles {
+        final Configuration mConfiguration;
+        final Map<String, PinEntryStyle> mStyles = new HashMap<>();
+
+        ThemeStyles(Configuration configuration) {
+            mConfiguration = new Configuration(configuration);
+        }
+    }
+
+    /**
+     * Builds a style in code, without an {@link AttributeSet} or a {@link TypedArray}.
+     * Dimensions are in pixels, anything not set keeps the same default as in xml.
+     * The resulting style can be shared by any number of views, see
+     * {@link PinEntryEditText#PinEntryEditText(Context, PinEntryStyle)}.
+     */
+    public static final class Builder {
+        int mAnimatedType = 0;
+        String mMask = null;
+        int mMaskShape = 0;
+        String mSingleCharHint = null;
+        float mLineStroke;
+        float mLineStrokeSelected;
+        float mSpace;
+        float mTextBottomPadding;
+        boolean mIsDigitSquare = false;
+        int mErrorFeedback = 0;
+        Drawable mPinBackground = null;
+        ColorStateList mLineColors = null;
+        int[] mDefaultColors;
+        int mMaxLength = 4;
+        float mMinSlotSize = 0;
+        int mGroupSize = 0;
+        float mGroupSpace;
+
+        public Builder(Context context) {
+            this(context, false);
+        }
+
+        Builder(Context context, boolean isInEditMode) {
+            float multi = context.getResources().getDisplayMetrics().density;
+            mLineStroke = multi * 1; //1dp by default
+            mLineStrokeSelected = multi * 2; //2dp by default
+            mSpace = multi * 24; //24dp by default, space between the lines
+            mTextBottomPadding = multi * 8; //8dp by default, height of the text from our lines
+            mGroupSpace = multi * 16; //16dp by default, added to the spacing between two groups
+
+            mDefaultColors = new int[]{
+                    Color.GREEN,
+                    Color.RED,
+                    Color.BLACK,
+                    Color.GRAY
+            };
+            TypedValue outValue = new TypedValue();
+            context.getTheme().resolveAttribute(R.attr.colorControlActivated, outValue, true);
+            mDefaultColors[0] = outValue.data;
+            int colorNormal = isInEditMode ? Color.GRAY : ContextCompat.getColor(context, R.color.pin_normal);
+            mDefaultColors[1] = colorNormal;
+            mDefaultColors[2] = colorNormal;
+        }
+
+        /**
+         * @param animationType {@link PinEntryEditText#ANIMATION_POP_IN},
+         *                      {@link PinEntryEditText#ANIMATION_FROM_BOTTOM} or
+         *                      {@link PinEntryEditText#ANIMATION_NONE}
+         */
+        public Builder setAnimationType(int animationType) {
+            mAnimatedType = animationType;
+            return this;
+        }
+
+        public Builder setMask(@Nullable String mask) {
+            mMask = mask;
+            return this;
+        }
+
+        /**
+         * @param maskShape {@link PinEntryEditText#MASK_SHAPE_NONE},
+         *                  {@link PinEntryEditText#MASK_SHAPE_CIRCLE} or
+         *                  {@link PinEntryEditText#MASK_SHAPE_SQUARE}
+         */
+        public Builder setMaskShape(int maskShape) {
+            mMaskShape = maskShape;
+            return this;
+        }
+
+        public Builder setSingleCharHint(@Nullable String hint) {
+            mSingleCharHint = hint;
+            return this;
+        }
+
+        public Builder setLineStroke(float lineStroke) {
+            mLineStroke = lineStroke;
+            return this;
+        }
+
+        public Builder setLineStrokeSelected(float lineStrokeSelected) {
+            mLineStrokeSelected = lineStrokeSelected;
+            return this;
+        }
+
+        public Builder setCharacterSpacing(float space) {
+            mSpace = space;
+            return this;
+        }
+
+        public Builder setTextBottomPadding(float textBottomPadding) {
+            mTextBottomPadding = textBottomPadding;
+            return this;
+        }
+
+        public Builder setBackgroundIsSquare(boolean isSquare) {
+            mIsDigitSquare = isSquare;
+            return this;
+        }
+
+        /**
+         * @param errorFeedback {@link PinEntryEditText#ERROR_FEEDBACK_NONE},
+         *                      {@link PinEntryEditText#ERROR_FEEDBACK_SHAKE} or
+         *                      {@link PinEntryEditText#ERROR_FEEDBACK_FLASH}
+         */
+        public Builder setErrorFeedback(int errorFeedback) {
+            mErrorFeedback = errorFeedback;
+            return this;
+        }
+
+        public Builder setPinBackground(@Nullable Drawable pinBackground) {
+            mPinBackground = pinBackground;
+            return this;
+        }
+
+        public Builder setLineColors(@Nullable ColorStateList lineColors) {
+            mLineColors = lineColors;
+            return this;
+        }
+
+        public Builder setMaxLength(int maxLength) {
+            mMaxLength = maxLength;
+            return this;
+        }
+
+        /**
+         * @param minSlotSize slots never get narrower than this, if the code doesn't fit
+         *                    the view scrolls horizontally instead. 0 (the default) always
+         *                    fits all slots in the view.
+         */
+        public Builder setMinSlotSize(float minSlotSize) {
+            mMinSlotSize = minSlotSize;
+            return this;
+        }
+
+        /**
+         * @param groupSize  number of slots per group, 0 (the default) doesn't group slots
+         * @param groupSpace extra space between two groups
+         */
+        public Builder setGroups(int groupSize, float groupSpace) {
+            mGroupSize = groupSize;
+            mGroupSpace = groupSpace;
+            return this;
+        }
+
+        public PinEntryStyle build() {
+            return new PinEntryStyle(this);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.content.Context;
+import android.view.inputmethod.BaseInputConnection;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+import android.view.inputmethod.InputMethodManager;
+
+/**
+ * The input connection of a {@link PinEntryEditText} in fast input mode. Text from the
+ * input method is appended straight to the view's {@link PinBuffer} and deletions remove
+ * characters from its end, without going through an Editable, spans or input filters.
+ * Composing text is inserted as it is composed and replaced when it changes. Editor
+ * actions are passed to the view, so its OnEditorActionListener gets the IME's action.
+ * <p/>
+ * The input method is told about every change (selection, composing region and, if it
+ * asked to monitor it, the extracted text) and reads the text before the cursor from the
+ * buffer, so composing keyboards keep track of what has been entered.
+ */
+final class PinInputConnection extends BaseInputConnection {
+    private final PinEntryEditText mView;
+    private final InputMethodManager mInputMethodManager;
+    private int mComposingLength;
+    //Token of the extracted text request being monitored, -1 if none
+    private int mExtractedTextToken = -1;
+
+    PinInputConnection(PinEntryEditText view) {
+        super(view, false);
+        mView = view;
+        mInputMethodManager = (InputMethodManager) view.getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+    }
+
+    @Override
+    public boolean commitText(CharSequence text, int newCursorPosition) {
+        replaceComposingText(text);
+        mComposingLength = 0;
+        reportTextChanged();
+        return true;
+    }
+
+    @Override
+    public boolean setComposingText(CharSequence text, int newCursorPosition) {
+        mComposingLength = replaceComposingText(text);
+        reportTextChanged();
+        return true;
+    }
+
+    @Override
+    public boolean finishComposingText() {
+        if (mComposingLength > 0) {
+            mComposingLength = 0;
+            reportTextChanged();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+        //The cursor is always at the end, there is nothing after it
+        mView.deleteFast(beforeLength);
+        mComposingLength = Math.max(0, mComposingLength - beforeLength);
+        reportTextChanged();
+        return true;
+    }
+
+    @Override
+    public boolean deleteSurroundingTextInCodePoints(int beforeLength, int afterLength) {
+        //Count the chars of the code points before the cursor, emoji take two
+        CharSequence text = mView.getPinText();
+        int start = text.length();
+        for (int i = 0; i < beforeLength && start > 0; i++) {
+            start--;
+            if (start > 0 && Character.isLowSurrogate(text.charAt(start))
+                    && Character.isHighSurrogate(text.charAt(start - 1))) {
+                start--;
+            }
+        }
+        return deleteSurroundingText(text.length() - start, afterLength);
+    }
+
+    @Override
+    public boolean setComposingRegion(int start, int end) {
+        //The cursor never leaves the end, only the end of the pin can be composed again
+        int length = mView.getPinText().length();
+        int regionStart = Math.max(0, Math.min(start, end));
+        int regionEnd = Math.max(start, end);
+        mComposingLength = regionEnd == length ? length - regionStart : 0;
+        reportTextChanged();
+        return true;
+    }
+
+    @Override
+    public boolean performEditorAction(int actionCode) {
+        //The default sends an enter key, listeners would get IME_NULL instead of the action
+        mView.onEditorAction(actionCode);
+        return true;
+    }
+
+    @Override
+    public CharSequence getTextBeforeCursor(int length, int flags) {
+        CharSequence text = mView.getInputMethodText();
+        return text.subSequence(Math.max(0, text.length() - length), text.length());
+    }
+
+    @Override
+    public CharSequence getTextAfterCursor(int length, int flags) {
+        return "";
+    }
+
+    @Override
+    public CharSequence getSelectedText(int flags) {
+        return null;
+    }
+
+    @Override
+    public ExtractedText getExtractedText(ExtractedTextRequest request, int flags) {
+        mExtractedTextToken = (flags & GET_EXTRACTED_TEXT_MONITOR) != 0 ? request.token : -1;
+        return extractText();
+    }
+
+    /**
+     * Tells the input method about a change of the pin, the cursor always follows the
+     * last character and the composing text, if any, is at the end.
+     */
+    void reportTextChanged() {
+        if (mInputMethodManager == null) {
+            return;
+        }
+        int length = mView.getPinText().length();
+        //Text set by the app may have replaced part of the composing text
+        mComposingLength = Math.min(mComposingLength, length);
+        int composingStart = mComposingLength > 0 ? length - mComposingLength : -1;
+        int composingEnd = mComposingLength > 0 ? length : -1;
+        mInputMethodManager.updateSelection(mView, length, length, composingStart, composingEnd);
+        if (mExtractedTextToken != -1) {
+            mInputMethodManager.updateExtractedText(mView, mExtractedTextToken, extractText());
+        }
+    }
+
+    private ExtractedText extractText() {
+        CharSequence text = mView.getInputMethodText();
+        ExtractedText extracted = new ExtractedText();
+        extracted.text = text.toString();
+        extracted.startOffset = 0;
+        extracted.partialStartOffset = -1;
+        extracted.partialEndOffset = -1;
+        extracted.selectionStart = text.length();
+        extracted.selectionEnd = text.length();
+        return extracted;
+    }
+
+    private int replaceComposingText(CharSequence text) {
+        mView.deleteFast(mComposingLength);
+        return mView.insertFast(text);
+    }
+}
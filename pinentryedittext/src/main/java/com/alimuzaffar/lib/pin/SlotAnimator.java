@@ -0,0 +1,260 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.view.View;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
+import android.view.animation.OvershootInterpolator;
+
+import androidx.core.os.TraceCompat;
+import androidx.core.view.ViewCompat;
+
+import java.util.Arrays;
+
+/**
+ * Animates any number of slots at the same time from a single frame callback.
+ * The state of each slot is kept in primitive arrays, so starting an animation
+ * doesn't allocate anything.
+ */
+final class SlotAnimator implements Runnable {
+    private static final long IDLE = -1;
+    private static final long FRAME_INTERVAL_MS = 16; //assumes a 60Hz display when counting dropped frames
+
+    interface Listener {
+        /**
+         * Called once per frame after the fractions of the animating slots,
+         * from {@code firstSlot} to {@code lastSlot} (inclusive), have been updated.
+         */
+        void onSlotAnimationFrame(int firstSlot, int lastSlot);
+
+        void onSlotAnimationEnd(int slot);
+    }
+
+    private final View mView;
+    private final Listener mListener;
+    private final Interpolator mInterpolator = new OvershootInterpolator();
+    private long mDuration = 200;
+    private long[] mStartTimes = new long[0];
+    private float[] mFractions = new float[0];
+    private boolean[] mEnded = new boolean[0];
+    private int[] mDroppedFrames = new int[0];
+    private long mLastFrameTime;
+    private int mActiveCount;
+    private boolean mScheduled;
+    private FrameClock mClock;
+
+    SlotAnimator(View view, Listener listener) {
+        mView = view;
+        mListener = listener;
+    }
+
+    View getView() {
+        return mView;
+    }
+
+    /**
+     * Runs the frames from a clock shared with other animators instead of posting
+     * a frame callback of its own, null goes back to a callback of its own.
+     */
+    void setClock(FrameClock clock) {
+        boolean scheduled = mScheduled;
+        unschedule();
+        mClock = clock;
+        if (scheduled) {
+            schedule();
+        }
+    }
+
+    void setDuration(long duration) {
+        mDuration = duration;
+    }
+
+    void setSlotCount(int count) {
+        if (mStartTimes.length == count) {
+            return;
+        }
+        cancel();
+        mStartTimes = new long[count];
+        mFractions = new float[count];
+        mEnded = new boolean[count];
+        mDroppedFrames = new int[count];
+        Arrays.fill(mStartTimes, IDLE);
+    }
+
+    /**
+     * Starts (or restarts) the animation of a slot on the next frame.
+     */
+    void start(int slot) {
+        start(slot, 0);
+    }
+
+    /**
+     * Starts (or restarts) the animation of a slot after {@code delay} milliseconds,
+     * the slot stays at the start of its animation until then.
+     */
+    void start(int slot, long delay) {
+        if (slot < 0 || slot >= mStartTimes.length) {
+            return;
+        }
+        if (mStartTimes[slot] == IDLE) {
+            mActiveCount++;
+        }
+        mStartTimes[slot] = AnimationUtils.currentAnimationTimeMillis() + delay;
+        mFractions[slot] = 0;
+        mDroppedFrames[slot] = 0;
+        schedule();
+    }
+
+    /**
+     * Stops the animation of a slot without notifying the listener.
+     */
+    void cancel(int slot) {
+        if (slot < 0 || slot >= mStartTimes.length || mStartTimes[slot] == IDLE) {
+            return;
+        }
+        mStartTimes[slot] = IDLE;
+        mFractions[slot] = 1;
+        mActiveCount--;
+        if (mActiveCount == 0) {
+            unschedule();
+        }
+    }
+
+    /**
+     * Stops all animations without notifying the listener.
+     */
+    void cancel() {
+        for (int i = 0; i < mStartTimes.length; i++) {
+            mStartTimes[i] = IDLE;
+            mFractions[i] = 1;
+        }
+        mActiveCount = 0;
+        unschedule();
+    }
+
+    boolean isAnimating(int slot) {
+        return slot >= 0 && slot < mStartTimes.length && mStartTimes[slot] != IDLE;
+    }
+
+    boolean isRunning() {
+        return mActiveCount > 0;
+    }
+
+    /**
+     * @return the number of frames that were skipped while the slot was animating,
+     * valid until the slot is started again.
+     */
+    int getDroppedFrames(int slot) {
+        return mDroppedFrames[slot];
+    }
+
+    /**
+     * @return the linear progress of the slot's animation, from 0 to 1.
+     */
+    float getFraction(int slot) {
+        return mFractions[slot];
+    }
+
+    /**
+     * @return the progress of the slot's animation with the overshoot applied.
+     */
+    float getInterpolatedFraction(int slot) {
+        return mInterpolator.getInterpolation(mFractions[slot]);
+    }
+
+    @Override
+    public void run() {
+        TraceCompat.beginSection("PinEntryEditText.animate");
+        try {
+            doFrame();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private void doFrame() {
+        mScheduled = false;
+        long now = AnimationUtils.currentAnimationTimeMillis();
+        int dropped = 0;
+        if (mLastFrameTime != 0 && now - mLastFrameTime > FRAME_INTERVAL_MS * 3 / 2) {
+            dropped = (int) ((now - mLastFrameTime) / FRAME_INTERVAL_MS) - 1;
+        }
+        mLastFrameTime = now;
+        int first = -1;
+        int last = -1;
+        boolean ended = false;
+        for (int i = 0; i < mStartTimes.length; i++) {
+            if (mStartTimes[i] == IDLE) {
+                continue;
+            }
+            mDroppedFrames[i] += dropped;
+            float fraction = mDuration > 0 ? (now - mStartTimes[i]) / (float) mDuration : 1;
+            if (fraction >= 1) {
+                fraction = 1;
+                mStartTimes[i] = IDLE;
+                mActiveCount--;
+                mEnded[i] = true;
+                ended = true;
+            }
+            mFractions[i] = Math.max(fraction, 0);
+            if (first == -1) {
+                first = i;
+            }
+            last = i;
+        }
+
+        if (mActiveCount > 0) {
+            schedule();
+        } else {
+            mLastFrameTime = 0;
+        }
+        if (first != -1) {
+            mListener.onSlotAnimationFrame(first, last);
+        }
+        if (ended) {
+            for (int i = 0; i < mEnded.length; i++) {
+                if (mEnded[i]) {
+                    mEnded[i] = false;
+                    mListener.onSlotAnimationEnd(i);
+                }
+            }
+        }
+    }
+
+    private void schedule() {
+        if (!mScheduled) {
+            mScheduled = true;
+            if (mClock != null) {
+                mClock.schedule(this);
+            } else {
+                ViewCompat.postOnAnimation(mView, this);
+            }
+        }
+    }
+
+    private void unschedule() {
+        mLastFrameTime = 0;
+        if (mScheduled) {
+            mScheduled = false;
+            if (mClock != null) {
+                mClock.unschedule(this);
+            } else {
+                mView.removeCallbacks(this);
+            }
+        }
+    }
+}
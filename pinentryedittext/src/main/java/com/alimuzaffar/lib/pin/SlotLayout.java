@@ -0,0 +1,159 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+/**
+ * Computes the geometry of the pin slots. This class doesn't depend on Android,
+ * results are written into caller supplied arrays so nothing is allocated.
+ * <p/>
+ * A negative {@code space} means the gap between two slots is as wide as a slot.
+ * When {@code groupSize} is greater than 0, every {@code groupSize} slots are followed
+ * by an extra {@code groupSpace} wide gap, e.g. to show a key as XXXX XXXX XXXX.
+ */
+public final class SlotLayout {
+    /**
+     * Number of floats written per slot by {@link #layout}: left, top, right, bottom.
+     */
+    public static final int STRIDE = 4;
+
+    private SlotLayout() {
+    }
+
+    /**
+     * @return the width of a single slot so that {@code numChars} slots fit in {@code availableWidth}.
+     */
+    public static float computeCharSize(float availableWidth, int numChars, float space) {
+        if (space < 0) {
+            return availableWidth / (numChars * 2 - 1);
+        }
+        return (availableWidth - space * (numChars - 1)) / numChars;
+    }
+
+    /**
+     * @return the width of a single slot so that {@code numChars} slots, including the
+     * gaps between their groups, fit in {@code availableWidth}.
+     */
+    public static float computeCharSize(float availableWidth, int numChars, float space, int groupSize, float groupSpace) {
+        return computeCharSize(availableWidth - groupGaps(numChars, groupSize) * groupSpace, numChars, space);
+    }
+
+    /**
+     * @return the top of the slots. Lines have no height, backgrounds are either as tall
+     * as the content area (square) or tall enough for the text and its padding.
+     */
+    public static float computeSlotTop(float bottom, float paddingTop, boolean hasBackground, boolean isSquare,
+                                       float textHeight, float textBottomPadding) {
+        if (!hasBackground) {
+            return bottom;
+        }
+        if (isSquare) {
+            return paddingTop;
+        }
+        return bottom - (textHeight + textBottomPadding * 2);
+    }
+
+    /**
+     * Lays out {@code numChars} slots from the start edge of the view and writes
+     * {@link #STRIDE} floats per slot into {@code out}. Slot 0 is the first character,
+     * which is the rightmost slot when {@code isRtl} is true. Slot positions are
+     * snapped to whole pixels.
+     */
+    public static void layout(int numChars, int width, int paddingStart, float charSize, float space,
+                              boolean isRtl, float top, float bottom, float[] out) {
+        layout(0, numChars, width, paddingStart, charSize, space, 0, 0, 0, isRtl, top, bottom, out);
+    }
+
+    /**
+     * Lays out the slots from {@code first} (inclusive) to {@code end} (exclusive) and writes
+     * {@link #STRIDE} floats per slot into {@code out}, at the slot's index. The slots are
+     * shifted towards the start edge by {@code scrollOffset}, slots of other indices are left
+     * untouched so laying out only the visible slots of a long code is cheap.
+     */
+    public static void layout(int first, int end, int width, int paddingStart, float charSize, float space,
+                              int groupSize, float groupSpace, float scrollOffset,
+                              boolean isRtl, float top, float bottom, float[] out) {
+        for (int i = first; i < end; i++) {
+            int startX = (int) (slotOffset(i, charSize, space, groupSize, groupSpace) - scrollOffset);
+            if (isRtl) {
+                startX = (int) (width - paddingStart - charSize) - startX;
+            } else {
+                startX += paddingStart;
+            }
+            int offset = i * STRIDE;
+            out[offset] = startX;
+            out[offset + 1] = top;
+            out[offset + 2] = startX + charSize;
+            out[offset + 3] = bottom;
+        }
+    }
+
+    /**
+     * @return the distance from the start edge of the first slot to the start edge of slot {@code index}.
+     */
+    public static float slotOffset(int index, float charSize, float space, int groupSize, float groupSpace) {
+        float offset = index * step(charSize, space);
+        if (groupSize > 0) {
+            offset += (index / groupSize) * groupSpace;
+        }
+        return offset;
+    }
+
+    /**
+     * @return the index of the last slot starting at or before {@code offset}, measured from
+     * the start edge of the first slot, clamped to the range of slots.
+     */
+    public static int slotAt(float offset, int numChars, float charSize, float space, int groupSize, float groupSpace) {
+        if (offset <= 0 || numChars <= 0) {
+            return 0;
+        }
+        float step = step(charSize, space);
+        int index;
+        if (groupSize > 0) {
+            float groupWidth = groupSize * step + groupSpace;
+            int group = (int) (offset / groupWidth);
+            index = group * groupSize + Math.min((int) ((offset - group * groupWidth) / step), groupSize - 1);
+        } else {
+            index = (int) (offset / step);
+        }
+        return Math.min(index, numChars - 1);
+    }
+
+    /**
+     * @return the width needed for {@code numChars} slots that are {@code charSize} wide.
+     */
+    public static float measureWidth(float charSize, int numChars, float space) {
+        if (space < 0) {
+            return charSize * (numChars * 2 - 1);
+        }
+        return charSize * numChars + space * (numChars - 1);
+    }
+
+    /**
+     * @return the width needed for {@code numChars} slots that are {@code charSize} wide,
+     * including the gaps between their groups.
+     */
+    public static float measureWidth(float charSize, int numChars, float space, int groupSize, float groupSpace) {
+        return measureWidth(charSize, numChars, space) + groupGaps(numChars, groupSize) * groupSpace;
+    }
+
+    private static float step(float charSize, float space) {
+        return space < 0 ? charSize * 2 : charSize + space;
+    }
+
+    private static int groupGaps(int numChars, int groupSize) {
+        return groupSize > 0 && numChars > 0 ? (numChars - 1) / groupSize : 0;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Draws the slots of a {@link PinEntryEditText}. The view lays out the slots, resolves their
+ * state and handles animations, a renderer only has to draw from the primitive arrays it is
+ * given, which are reused between frames and must not be kept.
+ * <p/>
+ * Extend {@link DefaultSlotRenderer} to draw custom shapes while keeping its batched
+ * character drawing, see {@link PinEntryEditText#setSlotRenderer(SlotRenderer)}.
+ */
+public interface SlotRenderer {
+    /**
+     * Draws the decoration of the slots from {@code first} (inclusive) to {@code end} (exclusive),
+     * the pin background of each slot if the view has one, the line below it otherwise.
+     * Backgrounds are drawn behind the characters, lines in front of them.
+     *
+     * @param bounds {@link SlotLayout#STRIDE} floats per slot (left, top, right, bottom), indexed
+     *               by slot. A line goes from (left, top) to (right, bottom).
+     * @param states the state of each slot, one of the {@code PinEntryEditText.SLOT_STATE_}
+     *               constants, indexed by slot.
+     */
+    void drawDecorations(PinEntryEditText view, Canvas canvas, float[] bounds, int[] states, int first, int end);
+
+    /**
+     * Draws the characters of {@code count} slots, none of which is animating. Not called
+     * for characters drawn from the glyph cache.
+     *
+     * @param text         the text shown, masked if there is a mask, {@code charsPerSlot} characters per slot
+     * @param slots        the indices of the slots to draw, in ascending order
+     * @param x            the left edge of the text of each slot, indexed by slot
+     * @param baselines    the baseline of the text of each slot, indexed by slot
+     */
+    void drawCharacters(PinEntryEditText view, Canvas canvas, CharSequence text, int charsPerSlot,
+                        int[] slots, int count, float[] x, float[] baselines, Paint paint);
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.text.InputType;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that the SMS one-time code autofill hint follows the input type.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AutofillHintsTest {
+    private static final String[] SMS_OTP = {"smsOTPCode"};
+
+    private PinEntryEditText mView;
+
+    @Before
+    public void setUp() {
+        RenderHarness harness = new RenderHarness();
+        mView = harness.attach(harness.newStyle(4).build(), false);
+    }
+
+    @Test
+    public void passwordInputTypeRemovesTheHint() {
+        mView.setInputType(InputType.TYPE_CLASS_NUMBER);
+        assertArrayEquals(SMS_OTP, mView.getAutofillHints());
+
+        mView.setInputType(InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_VARIATION_PASSWORD);
+        assertNull(mView.getAutofillHints());
+
+        mView.setInputType(InputType.TYPE_CLASS_NUMBER);
+        assertArrayEquals(SMS_OTP, mView.getAutofillHints());
+    }
+
+    @Test
+    public void hintsSetByTheAppAreKept() {
+        mView.setAutofillHints("postalCode");
+        mView.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_PASSWORD);
+        assertArrayEquals(new String[]{"postalCode"}, mView.getAutofillHints());
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.graphics.Bitmap;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that drawing the lines and backgrounds from the decoration cache gives the same
+ * pixels as drawing them every frame, including after each change that invalidates it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class DecorationCacheTest {
+    private RenderHarness mHarness;
+
+    @Before
+    public void setUp() {
+        mHarness = new RenderHarness();
+    }
+
+    @Test
+    public void lines() {
+        assertCacheMatchesThroughChanges(mHarness.newStyle(6).setSingleCharHint("#"), false);
+    }
+
+    @Test
+    public void linesRtl() {
+        assertCacheMatchesThroughChanges(mHarness.newStyle(6), true);
+    }
+
+    @Test
+    public void background() {
+        assertCacheMatchesThroughChanges(mHarness.newStyle(6)
+                .setPinBackground(RenderHarness.newPinBackground()), false);
+    }
+
+    @Test
+    public void squareBackground() {
+        assertCacheMatchesThroughChanges(mHarness.newStyle(6)
+                .setPinBackground(RenderHarness.newPinBackground())
+                .setBackgroundIsSquare(true), false);
+    }
+
+    /**
+     * Goes through every change that invalidates the cache, with the cache kept enabled
+     * in between, comparing the cached frame with an uncached one after each change.
+     */
+    private void assertCacheMatchesThroughChanges(PinEntryStyle.Builder style, boolean rtl) {
+        PinEntryEditText view = mHarness.attach(style.build(), rtl);
+        view.setDecorationCacheEnabled(true);
+        assertCacheMatches("empty");
+
+        view.setText("12");
+        mHarness.settle();
+        assertCacheMatches("text entered");
+
+        view.requestFocus();
+        mHarness.settle();
+        assertCacheMatches("focused");
+
+        view.append("3");
+        mHarness.nextFrame();
+        assertCacheMatches("animating");
+
+        mHarness.settle();
+        view.setError(true);
+        assertCacheMatches("error");
+
+        view.setError(false);
+        assertCacheMatches("error cleared");
+
+        view.setText("1");
+        mHarness.settle();
+        assertCacheMatches("text deleted");
+
+        view.setLayoutParams(new ViewGroup.LayoutParams(RenderHarness.WIDTH / 2, RenderHarness.HEIGHT));
+        mHarness.settle();
+        assertCacheMatches("resized");
+
+        view.clearFocus();
+        mHarness.settle();
+        assertCacheMatches("unfocused");
+    }
+
+    /**
+     * Renders the current state with the cache, then without it. The cache is enabled
+     * again and rendered into afterwards, so the next change has a stale cache to invalidate.
+     */
+    private void assertCacheMatches(String state) {
+        PinEntryEditText view = mHarness.getView();
+        Bitmap cached = mHarness.render().copy(Bitmap.Config.ARGB_8888, false);
+        view.setDecorationCacheEnabled(false);
+        Bitmap expected = mHarness.render();
+        assertEquals("pixels differing when " + state, 0, RenderHarness.diff(expected, cached));
+        view.setDecorationCacheEnabled(true);
+        mHarness.render();
+    }
+}
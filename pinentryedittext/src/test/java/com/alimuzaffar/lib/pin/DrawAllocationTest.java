@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that once the text has been measured, drawing a frame allocates nothing.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class DrawAllocationTest {
+    private static final int FRAMES = 100;
+
+    private RenderHarness mHarness;
+
+    @Before
+    public void setUp() {
+        assumeTrue("allocations can't be measured on this JVM", RenderHarness.canMeasureAllocations());
+        mHarness = new RenderHarness();
+    }
+
+    @Test
+    public void text() {
+        assertNoAllocations(mHarness.newStyle(6).setMask(null));
+    }
+
+    @Test
+    public void mask() {
+        assertNoAllocations(mHarness.newStyle(6).setMask("*"));
+    }
+
+    @Test
+    public void maskShape() {
+        assertNoAllocations(mHarness.newStyle(6).setMask("*").setMaskShape(PinEntryEditText.MASK_SHAPE_CIRCLE));
+    }
+
+    @Test
+    public void hint() {
+        assertNoAllocations(mHarness.newStyle(6).setSingleCharHint("#"));
+    }
+
+    @Test
+    public void background() {
+        assertNoAllocations(mHarness.newStyle(6).setPinBackground(RenderHarness.newPinBackground()));
+    }
+
+    @Test
+    public void longCode() {
+        assertNoAllocations(mHarness.newStyle(32).setSingleCharHint("#"));
+    }
+
+    private void assertNoAllocations(PinEntryStyle.Builder style) {
+        PinEntryEditText view = mHarness.attach(style.build(), false);
+        view.setText("123");
+        mHarness.settle();
+        //The first frames after a change measure the text and fill the caches
+        mHarness.render();
+        mHarness.render();
+
+        mHarness.resetMeasurements();
+        for (int i = 0; i < FRAMES; i++) {
+            mHarness.renderMeasured();
+        }
+        assertEquals("bytes allocated in " + FRAMES + " frames", 0, mHarness.getAllocatedBytes());
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that switching between secure and fast input never leaves the pin behind.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class InputModeTest {
+    private PinEntryEditText mView;
+
+    @Before
+    public void setUp() {
+        RenderHarness harness = new RenderHarness();
+        mView = harness.attach(harness.newStyle(6).build(), false);
+    }
+
+    @Test
+    public void disablingFastInputWipesTheSecureBuffer() throws Exception {
+        mView.setSecureInputEnabled(true);
+        mView.setFastInputEnabled(true);
+        type("1234");
+        PinBuffer buffer = (PinBuffer) mView.getPinText();
+
+        mView.setFastInputEnabled(false);
+
+        //Secure input keeps the same buffer, it must have been wiped
+        assertSame(buffer, mView.getPinText());
+        assertEquals(0, buffer.length());
+        assertArrayEquals(new char[6], chars(buffer));
+        mView.append("5");
+        assertEquals("5", mView.getPinText().toString());
+    }
+
+    @Test
+    public void disablingSecureInputWipesTheFastBuffer() throws Exception {
+        mView.setFastInputEnabled(true);
+        mView.setSecureInputEnabled(true);
+        type("1234");
+        PinBuffer buffer = (PinBuffer) mView.getPinText();
+
+        mView.setSecureInputEnabled(false);
+
+        //Fast input keeps the same buffer, it must have been wiped
+        assertSame(buffer, mView.getPinText());
+        assertEquals(0, buffer.length());
+        assertArrayEquals(new char[6], chars(buffer));
+        type("5");
+        assertEquals("5", mView.getPinText().toString());
+    }
+
+    @Test
+    public void enablingFastInputClearsTheSecurePin() throws Exception {
+        mView.setSecureInputEnabled(true);
+        mView.append("1234");
+        PinBuffer buffer = (PinBuffer) mView.getPinText();
+
+        mView.setFastInputEnabled(true);
+
+        assertSame(buffer, mView.getPinText());
+        assertArrayEquals(new char[6], chars(buffer));
+        type("5");
+        assertEquals("5", mView.getPinText().toString());
+    }
+
+    @Test
+    public void enablingSecureInputClearsTheFastPin() throws Exception {
+        mView.setFastInputEnabled(true);
+        type("1234");
+        PinBuffer buffer = (PinBuffer) mView.getPinText();
+
+        mView.setSecureInputEnabled(true);
+
+        assertSame(buffer, mView.getPinText());
+        assertArrayEquals(new char[6], chars(buffer));
+        type("5");
+        assertEquals("5", mView.getPinText().toString());
+    }
+
+    private void type(String text) {
+        InputConnection connection = mView.onCreateInputConnection(new EditorInfo());
+        connection.commitText(text, 1);
+    }
+
+    //The whole backing array, including what is past the length
+    private static char[] chars(PinBuffer buffer) throws Exception {
+        Field field = PinBuffer.class.getDeclaredField("mChars");
+        field.setAccessible(true);
+        return (char[]) field.get(buffer);
+    }
+}
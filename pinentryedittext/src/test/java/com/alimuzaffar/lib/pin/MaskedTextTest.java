@@ -0,0 +1,79 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MaskedTextTest {
+
+    @Test
+    public void masksEveryCharacter() {
+        MaskedText text = new MaskedText("1234", "*");
+        assertEquals(4, text.length());
+        assertEquals('*', text.charAt(3));
+        assertEquals("****", text.toString());
+    }
+
+    @Test
+    public void followsTheSource() {
+        StringBuilder source = new StringBuilder("12");
+        MaskedText text = new MaskedText(source, "*");
+        source.append("34");
+        assertEquals("****", text.toString());
+        source.setLength(1);
+        assertEquals("*", text.toString());
+        assertSame(source, text.getSource());
+    }
+
+    @Test
+    public void multiCharMask() {
+        //U+1F512, a lock, takes two chars
+        String lock = "\uD83D\uDD12";
+        MaskedText text = new MaskedText("123", lock);
+        assertEquals(6, text.length());
+        assertEquals('\uD83D', text.charAt(2));
+        assertEquals('\uDD12', text.charAt(3));
+        assertEquals(lock + lock + lock, text.toString());
+        assertEquals(lock, text.subSequence(2, 4).toString());
+    }
+
+    @Test
+    public void subSequence() {
+        MaskedText text = new MaskedText("1234", "*");
+        assertEquals("**", text.subSequence(1, 3).toString());
+        assertEquals("", text.subSequence(2, 2).toString());
+    }
+
+    @Test
+    public void emptySource() {
+        MaskedText text = new MaskedText("", "*");
+        assertEquals(0, text.length());
+        assertEquals("", text.toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void charAt_pastTheLength() {
+        new MaskedText("12", "*").charAt(2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void subSequence_pastTheLength() {
+        new MaskedText("12", "*").subSequence(1, 3);
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PinBufferTest {
+
+    @Test
+    public void replace_insertsAtTheEnd() {
+        PinBuffer buffer = buffer(6, "12");
+        buffer.replace(2, 2, "x34y", 1, 3);
+        assertEquals("1234", buffer.toString());
+    }
+
+    @Test
+    public void replace_insertsInTheMiddle() {
+        PinBuffer buffer = buffer(6, "1256");
+        buffer.replace(2, 2, "34", 0, 2);
+        assertEquals("123456", buffer.toString());
+    }
+
+    @Test
+    public void replace_replacesARange() {
+        PinBuffer buffer = buffer(6, "123456");
+        buffer.replace(1, 4, "x", 0, 1);
+        assertEquals("1x56", buffer.toString());
+    }
+
+    @Test
+    public void replace_dropsWhatDoesNotFit() {
+        PinBuffer buffer = buffer(4, "12");
+        buffer.replace(1, 1, "abcd", 0, 4);
+        assertEquals("1ab2", buffer.toString());
+    }
+
+    @Test
+    public void replace_clampsToTheLength() {
+        PinBuffer buffer = buffer(4, "12");
+        buffer.replace(5, 9, "3", 0, 1);
+        assertEquals("123", buffer.toString());
+    }
+
+    @Test
+    public void replace_zeroesRemovedCharacters() throws Exception {
+        PinBuffer buffer = buffer(4, "1234");
+        buffer.replace(1, 4, "", 0, 0);
+        assertEquals("1", buffer.toString());
+        assertArrayEquals(new char[]{'1', '\0', '\0', '\0'}, chars(buffer));
+    }
+
+    @Test
+    public void append_stopsWhenFull() {
+        PinBuffer buffer = new PinBuffer(2);
+        assertTrue(buffer.append('1'));
+        assertTrue(buffer.append('2'));
+        assertFalse(buffer.append('3'));
+        assertEquals("12", buffer.toString());
+    }
+
+    @Test
+    public void wipe_zeroesTheBuffer() throws Exception {
+        PinBuffer buffer = buffer(4, "1234");
+        buffer.wipe();
+        assertEquals(0, buffer.length());
+        assertEquals(4, buffer.capacity());
+        assertArrayEquals(new char[4], chars(buffer));
+    }
+
+    @Test
+    public void contentEquals() {
+        PinBuffer buffer = buffer(4, "1234");
+        assertTrue(buffer.contentEquals("1234"));
+        assertTrue(buffer.contentEquals(new StringBuilder("1234")));
+        assertFalse(buffer.contentEquals("1235"));
+        assertFalse(buffer.contentEquals("123"));
+        assertFalse(buffer.contentEquals(null));
+    }
+
+    @Test
+    public void toCharArray_isACopy() {
+        PinBuffer buffer = buffer(4, "12");
+        char[] chars = buffer.toCharArray();
+        chars[0] = 'x';
+        assertEquals('1', buffer.charAt(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void charAt_pastTheLength() {
+        buffer(4, "12").charAt(2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void subSequence_pastTheLength() {
+        buffer(4, "12").subSequence(0, 3);
+    }
+
+    private static PinBuffer buffer(int capacity, String text) {
+        PinBuffer buffer = new PinBuffer(capacity);
+        buffer.replace(0, 0, text, 0, text.length());
+        return buffer;
+    }
+
+    //The whole backing array, including what is past the length
+    private static char[] chars(PinBuffer buffer) throws Exception {
+        Field field = PinBuffer.class.getDeclaredField("mChars");
+        field.setAccessible(true);
+        return (char[]) field.get(buffer);
+    }
+}
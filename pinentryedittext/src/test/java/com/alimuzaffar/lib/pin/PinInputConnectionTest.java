@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.text.InputType;
+import android.view.KeyEvent;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that every edit the input method makes in fast input mode reaches the pin.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PinInputConnectionTest {
+    private PinEntryEditText mView;
+    private InputConnection mConnection;
+
+    @Before
+    public void setUp() {
+        RenderHarness harness = new RenderHarness();
+        mView = harness.attach(harness.newStyle(6).build(), false);
+        mView.setFastInputEnabled(true);
+        mConnection = mView.onCreateInputConnection(new EditorInfo());
+    }
+
+    @Test
+    public void commitAndDelete() {
+        mConnection.commitText("1234", 1);
+        mConnection.deleteSurroundingText(1, 0);
+        assertEquals("123", mView.getPinText().toString());
+    }
+
+    @Test
+    public void deleteInCodePoints() {
+        mView.setInputType(InputType.TYPE_CLASS_TEXT);
+        mConnection = mView.onCreateInputConnection(new EditorInfo());
+        mConnection.commitText("ab\uD83D\uDD12", 1);
+        mConnection.deleteSurroundingTextInCodePoints(1, 0);
+        assertEquals("ab", mView.getPinText().toString());
+        mConnection.deleteSurroundingTextInCodePoints(5, 0);
+        assertEquals("", mView.getPinText().toString());
+    }
+
+    @Test
+    public void recomposeTheEnd() {
+        mConnection.commitText("1234", 1);
+        mConnection.setComposingRegion(2, 4);
+        mConnection.setComposingText("9", 1);
+        mConnection.finishComposingText();
+        assertEquals("129", mView.getPinText().toString());
+    }
+
+    @Test
+    public void editorActionReachesTheListener() {
+        final int[] action = {EditorInfo.IME_NULL};
+        mView.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
+                action[0] = actionId;
+                return true;
+            }
+        });
+        mConnection.performEditorAction(EditorInfo.IME_ACTION_DONE);
+        assertEquals(EditorInfo.IME_ACTION_DONE, action[0]);
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.os.Looper;
+
+import androidx.core.os.CancellationSignal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that pins are verified on the supplied executor, never on the main looper, and
+ * that editing the text cancels a verification in progress.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PinVerifierTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private ExecutorService mExecutor;
+    private PinEntryEditText mView;
+    private FakeVerifier mVerifier;
+    private Boolean mVerified;
+    private Looper mVerifiedLooper;
+
+    @Before
+    public void setUp() {
+        RenderHarness harness = new RenderHarness();
+        mView = harness.attach(harness.newStyle(4)
+                .setAnimationType(PinEntryEditText.ANIMATION_NONE)
+                .build(), false);
+        mView.setPinEnteredDispatchMode(PinEntryEditText.DISPATCH_IMMEDIATELY);
+        mExecutor = Executors.newSingleThreadExecutor();
+        mVerifier = new FakeVerifier();
+        mView.setPinVerifier(mVerifier, mExecutor);
+        mView.setOnPinVerifiedListener(new PinEntryEditText.OnPinVerifiedListener() {
+            @Override
+            public void onPinVerified(boolean verified) {
+                mVerified = verified;
+                mVerifiedLooper = Looper.myLooper();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void verifiesOffTheMainLooper() throws InterruptedException {
+        mView.setText("1234");
+        finishVerification();
+
+        assertEquals(1, mVerifier.mCalls);
+        assertNull("verified on a looper thread", mVerifier.mLooper);
+        assertNotSame(Thread.currentThread(), mVerifier.mThread);
+        assertEquals("1234", mVerifier.mPin);
+        assertSame(Looper.getMainLooper(), mVerifiedLooper);
+        assertTrue(mVerified);
+        assertFalse(mView.isError());
+    }
+
+    @Test
+    public void failedVerificationSetsError() throws InterruptedException {
+        mVerifier.mResult = false;
+        mView.setText("1234");
+        finishVerification();
+
+        assertFalse(mVerified);
+        assertTrue(mView.isError());
+    }
+
+    @Test
+    public void throwingVerifierFails() throws InterruptedException {
+        mVerifier.mThrow = true;
+        mView.setText("1234");
+        finishVerification();
+
+        assertFalse(mVerified);
+        assertTrue(mView.isError());
+        assertEquals(0, mVerifier.mPinSeen.length());
+    }
+
+    @Test
+    public void rejectedVerificationFails() {
+        mExecutor.shutdown();
+        //Must not throw out of onTextChanged
+        mView.setText("1234");
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(0, mVerifier.mCalls);
+        assertFalse(mVerified);
+        assertTrue(mView.isError());
+    }
+
+    @Test
+    public void wipesThePinAfterVerifying() throws InterruptedException {
+        mView.setText("1234");
+        finishVerification();
+
+        assertEquals(0, mVerifier.mPinSeen.length());
+    }
+
+    @Test
+    public void editingCancelsVerification() throws InterruptedException {
+        mVerifier.mBlock = new CountDownLatch(1);
+        mView.setText("1234");
+        assertTrue(mVerifier.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        mView.setText("123");
+        mVerifier.mBlock.countDown();
+        finishVerification();
+
+        assertTrue(mVerifier.mSignal.isCanceled());
+        assertNull("result of a canceled verification reported", mVerified);
+        assertFalse(mView.isError());
+    }
+
+    /**
+     * Waits for the executor to run the verifier, then runs what it posted to the main looper.
+     */
+    private void finishVerification() throws InterruptedException {
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static final class FakeVerifier implements PinEntryEditText.PinVerifier {
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        volatile CountDownLatch mBlock;
+        volatile boolean mResult = true;
+        volatile boolean mThrow;
+        volatile int mCalls;
+        volatile Thread mThread;
+        volatile Looper mLooper;
+        volatile String mPin;
+        volatile CharSequence mPinSeen;
+        volatile CancellationSignal mSignal;
+
+        @Override
+        public boolean verify(CharSequence pin, CancellationSignal signal) {
+            mCalls++;
+            mThread = Thread.currentThread();
+            mLooper = Looper.myLooper();
+            mPin = pin.toString();
+            mPinSeen = pin;
+            mSignal = signal;
+            mStarted.countDown();
+            if (mBlock != null) {
+                try {
+                    mBlock.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (mThrow) {
+                throw new IllegalStateException("verifier failure");
+            }
+            return mResult;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.GradientDrawable;
+import android.os.Looper;
+import android.util.TypedValue;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.robolectric.Robolectric;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Renders a {@link PinEntryEditText} attached to an activity into an offscreen bitmap.
+ * The main looper is paused, its clock is advanced one frame at a time so animations are
+ * deterministic. Measures the time spent in onDraw and the bytes allocated while
+ * rendering, and compares frames with golden images.
+ * <p/>
+ * Run with {@code @GraphicsMode(NATIVE)} so frames are real pixels.
+ */
+final class RenderHarness {
+    static final int WIDTH = 800;
+    static final int HEIGHT = 96;
+    static final float SPACE = 8;
+    static final float TEXT_SIZE = 32;
+    static final long FRAME_MS = 16;
+
+    //Relative to the module, which is the working directory of unit tests
+    private static final File GOLDEN_DIR = new File("src/test/resources/golden");
+    static final File OUT_DIR = new File("build/render-harness");
+    //Set by ./gradlew test -PrecordGoldens
+    private static final boolean RECORD_GOLDENS = Boolean.getBoolean("pin.recordGoldens");
+
+    private static Method sAllocatedBytes;
+    private static Object sThreadMXBean;
+    private static long sMeasureOverhead = -1;
+
+    private final Activity mActivity;
+    private final Context mContext;
+    private final Bitmap mBitmap;
+    private final Canvas mCanvas;
+    private PinEntryEditText mView;
+
+    private long mDrawNanos;
+    private int mDraws;
+    private long mAllocatedBytes;
+    private int mFrames;
+
+    RenderHarness() {
+        mActivity = Robolectric.buildActivity(Activity.class).setup().get();
+        //The library manifest doesn't declare supportsRtl, without it views never resolve to RTL
+        mActivity.getApplicationInfo().flags |= ApplicationInfo.FLAG_SUPPORTS_RTL;
+        mContext = new ContextThemeWrapper(mActivity, R.style.Theme_AppCompat_Light_NoActionBar);
+        mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    /**
+     * @return a style builder for {@code numChars} slots that fit the harness.
+     */
+    PinEntryStyle.Builder newStyle(int numChars) {
+        return new PinEntryStyle.Builder(mContext)
+                .setMaxLength(numChars)
+                .setCharacterSpacing(SPACE);
+    }
+
+    /**
+     * @return a drawable to use as the pin background, with a stroke so it shows on white.
+     */
+    static GradientDrawable newPinBackground() {
+        GradientDrawable background = new GradientDrawable();
+        background.setColor(Color.LTGRAY);
+        background.setStroke(2, Color.DKGRAY);
+        return background;
+    }
+
+    /**
+     * Creates a view with {@code style} and makes it the content of the activity.
+     */
+    PinEntryEditText attach(PinEntryStyle style, boolean rtl) {
+        mView = new PinEntryEditText(mContext, style);
+        mView.setTextSize(TypedValue.COMPLEX_UNIT_PX, TEXT_SIZE);
+        mView.setLayoutDirection(rtl ? View.LAYOUT_DIRECTION_RTL : View.LAYOUT_DIRECTION_LTR);
+        mView.setMetricsListener(new PinEntryEditText.MetricsListener() {
+            @Override
+            public void onDraw(long durationNanos, int slotsDrawn) {
+                mDrawNanos += durationNanos;
+                mDraws++;
+            }
+
+            @Override
+            public void onAnimationStart(int slot, long uptimeMillis) {
+            }
+
+            @Override
+            public void onAnimationEnd(int slot, long uptimeMillis, int droppedFrames) {
+            }
+
+            @Override
+            public void onKeystrokeToFrame(long latencyNanos) {
+            }
+
+            @Override
+            public void onPinEntryTime(long durationNanos) {
+            }
+        });
+        mActivity.setContentView(mView, new ViewGroup.LayoutParams(WIDTH, HEIGHT));
+        settle();
+        return mView;
+    }
+
+    PinEntryEditText getView() {
+        return mView;
+    }
+
+    /**
+     * Advances the main looper by one frame, running animation callbacks and layout.
+     */
+    void nextFrame() {
+        shadowOf(Looper.getMainLooper()).idleFor(FRAME_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Advances the main looper until every animation has ended.
+     */
+    void settle() {
+        shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Draws the view over a white background into the harness bitmap.
+     */
+    Bitmap render() {
+        mBitmap.eraseColor(Color.WHITE);
+        mView.draw(mCanvas);
+        return mBitmap;
+    }
+
+    /**
+     * Renders a frame, counting the bytes allocated while doing so.
+     */
+    Bitmap renderMeasured() {
+        long before = allocatedBytes();
+        render();
+        long after = allocatedBytes();
+        mAllocatedBytes += Math.max(0, after - before - sMeasureOverhead);
+        mFrames++;
+        return mBitmap;
+    }
+
+    /**
+     * Types {@code text} one character at a time, rendering every frame until the
+     * character's animation has ended.
+     */
+    void type(CharSequence text) {
+        int framesPerChar = (int) (TimeUnit.SECONDS.toMillis(1) / 2 / FRAME_MS);
+        for (int i = 0; i < text.length(); i++) {
+            mView.append(text, i, i + 1);
+            for (int frame = 0; frame < framesPerChar; frame++) {
+                nextFrame();
+                renderMeasured();
+            }
+        }
+    }
+
+    /**
+     * Clears the time and allocations measured so far.
+     */
+    void resetMeasurements() {
+        mDrawNanos = 0;
+        mDraws = 0;
+        mAllocatedBytes = 0;
+        mFrames = 0;
+    }
+
+    /**
+     * @return the average time spent in onDraw, in nanoseconds.
+     */
+    long getNanosPerDraw() {
+        return mDraws == 0 ? 0 : mDrawNanos / mDraws;
+    }
+
+    /**
+     * @return the average number of bytes allocated per measured frame, -1 if the JVM
+     * can't measure allocations.
+     */
+    long getBytesPerFrame() {
+        if (!canMeasureAllocations()) {
+            return -1;
+        }
+        return mFrames == 0 ? 0 : mAllocatedBytes / mFrames;
+    }
+
+    long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    int getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * Compares the last rendered frame with the golden image {@code name}. A missing golden
+     * fails the test unless goldens are being recorded. A frame that differs or has no
+     * golden is written to {@link #OUT_DIR} so it can be inspected.
+     *
+     * @return the number of pixels that differ
+     */
+    int compareWithGolden(String name) throws IOException {
+        File golden = new File(GOLDEN_DIR, name + ".png");
+        if (!golden.exists()) {
+            if (RECORD_GOLDENS) {
+                writePng(mBitmap, golden);
+                return 0;
+            }
+            writePng(mBitmap, new File(OUT_DIR, name + ".png"));
+            throw new AssertionError("No golden image " + golden.getPath()
+                    + ", run ./gradlew test -PrecordGoldens to record it");
+        }
+        int diff = diff(BitmapFactory.decodeFile(golden.getPath()), mBitmap);
+        if (diff != 0) {
+            writePng(mBitmap, new File(OUT_DIR, name + ".png"));
+        }
+        return diff;
+    }
+
+    /**
+     * @return the number of pixels that differ, every pixel if the sizes differ.
+     */
+    static int diff(Bitmap expected, Bitmap actual) {
+        int width = actual.getWidth();
+        int height = actual.getHeight();
+        if (expected.getWidth() != width || expected.getHeight() != height) {
+            return width * height;
+        }
+        int[] expectedPixels = new int[width * height];
+        int[] actualPixels = new int[width * height];
+        expected.getPixels(expectedPixels, 0, width, 0, 0, width, height);
+        actual.getPixels(actualPixels, 0, width, 0, 0, width, height);
+        int diff = 0;
+        for (int i = 0; i < actualPixels.length; i++) {
+            if (expectedPixels[i] != actualPixels[i]) {
+                diff++;
+            }
+        }
+        return diff;
+    }
+
+    static void writePng(Bitmap bitmap, File file) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    static boolean canMeasureAllocations() {
+        return allocatedBytes() >= 0;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, -1 if unsupported.
+     * java.lang.management isn't part of android.jar, so the MXBean is reached through
+     * reflection. The cost of calling this is measured once and subtracted.
+     */
+    private static long allocatedBytes() {
+        try {
+            if (sAllocatedBytes == null) {
+                sThreadMXBean = Class.forName("java.lang.management.ManagementFactory")
+                        .getMethod("getThreadMXBean").invoke(null);
+                sAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                        .getMethod("getThreadAllocatedBytes", long.class);
+                sMeasureOverhead = 0;
+                long overhead = Long.MAX_VALUE;
+                for (int i = 0; i < 100; i++) {
+                    long first = allocatedBytes();
+                    overhead = Math.min(overhead, allocatedBytes() - first);
+                }
+                sMeasureOverhead = overhead;
+            }
+            return (Long) sAllocatedBytes.invoke(sThreadMXBean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Renders every combination of the options that change how slots are drawn, reports the
+ * time per onDraw and the bytes allocated per frame while typing, and compares the frames
+ * with golden images. The report is written to build/render-harness/report.txt.
+ * <p/>
+ * A missing golden image fails the test. Run {@code ./gradlew test -PrecordGoldens} to
+ * record the missing ones into src/test/resources/golden, delete an image to record it
+ * again after an intended change.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class RenderMatrixTest {
+    private static final int[] SLOTS = {4, 8, 16, 32};
+    private static final int[] ANIMATIONS = {
+            PinEntryEditText.ANIMATION_NONE,
+            PinEntryEditText.ANIMATION_POP_IN,
+            PinEntryEditText.ANIMATION_FROM_BOTTOM
+    };
+    private static final String[] ANIMATION_NAMES = {"none", "popIn", "fromBottom"};
+    private static final int LINES = 0;
+    private static final int BACKGROUND = 1;
+    private static final int SQUARE_BACKGROUND = 2;
+    private static final String[] BACKGROUND_NAMES = {"lines", "background", "square"};
+    private static final String DIGITS = "1234567890";
+
+    private static final List<String> sReport = new ArrayList<>();
+
+    private final int mNumChars;
+    private final boolean mMask;
+    private final boolean mHint;
+    private final int mBackground;
+    private final boolean mRtl;
+    private final int mAnimation;
+    private final String mName;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{6}")
+    public static List<Object[]> configurations() {
+        List<Object[]> configurations = new ArrayList<>();
+        for (int numChars : SLOTS) {
+            for (int mask = 0; mask < 2; mask++) {
+                for (int hint = 0; hint < 2; hint++) {
+                    for (int background = LINES; background <= SQUARE_BACKGROUND; background++) {
+                        for (int rtl = 0; rtl < 2; rtl++) {
+                            for (int animation = 0; animation < ANIMATIONS.length; animation++) {
+                                String name = numChars
+                                        + (mask == 1 ? "_mask" : "_text")
+                                        + (hint == 1 ? "_hint" : "")
+                                        + "_" + BACKGROUND_NAMES[background]
+                                        + (rtl == 1 ? "_rtl" : "_ltr")
+                                        + "_" + ANIMATION_NAMES[animation];
+                                configurations.add(new Object[]{numChars, mask == 1, hint == 1, background,
+                                        rtl == 1, ANIMATIONS[animation], name});
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return configurations;
+    }
+
+    public RenderMatrixTest(int numChars, boolean mask, boolean hint, int background, boolean rtl,
+                            int animation, String name) {
+        mNumChars = numChars;
+        mMask = mask;
+        mHint = hint;
+        mBackground = background;
+        mRtl = rtl;
+        mAnimation = animation;
+        mName = name;
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        RenderHarness.OUT_DIR.mkdirs();
+        Writer writer = new FileWriter(new File(RenderHarness.OUT_DIR, "report.txt"));
+        try {
+            for (String line : sReport) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void render() throws IOException {
+        RenderHarness harness = new RenderHarness();
+        PinEntryStyle.Builder style = harness.newStyle(mNumChars)
+                .setAnimationType(mAnimation)
+                .setMask(mMask ? "*" : null)
+                .setSingleCharHint(mHint ? "#" : null);
+        if (mBackground != LINES) {
+            style.setPinBackground(RenderHarness.newPinBackground())
+                    .setBackgroundIsSquare(mBackground == SQUARE_BACKGROUND);
+        }
+        harness.attach(style.build(), mRtl);
+
+        //Fill half of the slots so both entered characters and hints show
+        int length = Math.max(2, mNumChars / 2);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(DIGITS.charAt(i % DIGITS.length()));
+        }
+        harness.type(text.subSequence(0, length - 1));
+
+        //A frame in the middle of the last character's animation, the clock is simulated
+        //so it is the same frame on every run
+        harness.getView().append(text, length - 1, length);
+        harness.nextFrame();
+        harness.nextFrame();
+        harness.nextFrame();
+        harness.renderMeasured();
+        int frameDiff = harness.compareWithGolden(mName + "_frame");
+
+        harness.settle();
+        harness.renderMeasured();
+        int settledDiff = harness.compareWithGolden(mName);
+
+        String line = String.format(Locale.US, "%-36s %9d ns/onDraw %7d B/frame %6d px diff",
+                mName, harness.getNanosPerDraw(), harness.getBytesPerFrame(), frameDiff + settledDiff);
+        sReport.add(line);
+
+        assertEquals("pixels differing from golden " + mName + "_frame", 0, frameDiff);
+        assertEquals("pixels differing from golden " + mName, 0, settledDiff);
+    }
+}
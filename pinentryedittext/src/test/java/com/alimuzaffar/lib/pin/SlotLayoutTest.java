@@ -0,0 +1,133 @@
+/**
+ * Copyright 2016 Ali Muzaffar
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alimuzaffar.lib.pin;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlotLayoutTest {
+    private static final float DELTA = 0.001f;
+
+    @Test
+    public void computeCharSize_fixedSpace() {
+        assertEquals(40f, SlotLayout.computeCharSize(190, 4, 10), DELTA);
+    }
+
+    @Test
+    public void computeCharSize_negativeSpaceIsSlotWide() {
+        assertEquals(10f, SlotLayout.computeCharSize(70, 4, -1), DELTA);
+    }
+
+    @Test
+    public void computeCharSize_groupsTakeTheirGap() {
+        //8 slots in 2 groups, 7 gaps of 10 and one group gap of 30
+        assertEquals(40f, SlotLayout.computeCharSize(420, 8, 10, 4, 30), DELTA);
+    }
+
+    @Test
+    public void measureWidth_matchesComputeCharSize() {
+        float[] spaces = {0, 10, -1};
+        for (float space : spaces) {
+            for (int numChars = 1; numChars <= 64; numChars++) {
+                float charSize = SlotLayout.computeCharSize(1000, numChars, space, 4, 24);
+                assertEquals(1000f, SlotLayout.measureWidth(charSize, numChars, space, 4, 24), 0.01f);
+            }
+        }
+    }
+
+    @Test
+    public void measureWidth_endsAtTheLastSlot() {
+        float width = SlotLayout.measureWidth(40, 8, 10, 3, 30);
+        assertEquals(width, SlotLayout.slotOffset(7, 40, 10, 3, 30) + 40, DELTA);
+    }
+
+    @Test
+    public void computeSlotTop() {
+        assertEquals(100f, SlotLayout.computeSlotTop(100, 8, false, false, 30, 5), DELTA);
+        assertEquals(8f, SlotLayout.computeSlotTop(100, 8, true, true, 30, 5), DELTA);
+        assertEquals(60f, SlotLayout.computeSlotTop(100, 8, true, false, 30, 5), DELTA);
+    }
+
+    @Test
+    public void layout_ltr() {
+        float[] out = new float[4 * SlotLayout.STRIDE];
+        SlotLayout.layout(4, 200, 5, 40, 10, false, 20, 60, out);
+        for (int i = 0; i < 4; i++) {
+            assertSlot(out, i, 5 + i * 50, 20, 45 + i * 50, 60);
+        }
+    }
+
+    @Test
+    public void layout_rtlMirrorsLtr() {
+        int width = 200;
+        float[] ltr = new float[4 * SlotLayout.STRIDE];
+        float[] rtl = new float[4 * SlotLayout.STRIDE];
+        SlotLayout.layout(4, width, 5, 40, 10, false, 20, 60, ltr);
+        SlotLayout.layout(4, width, 5, 40, 10, true, 20, 60, rtl);
+        for (int i = 0; i < 4; i++) {
+            int offset = i * SlotLayout.STRIDE;
+            assertSlot(rtl, i, width - ltr[offset + 2], 20, width - ltr[offset], 60);
+        }
+    }
+
+    @Test
+    public void layout_negativeSpace() {
+        float[] out = new float[3 * SlotLayout.STRIDE];
+        SlotLayout.layout(3, 100, 0, 20, -1, false, 0, 10, out);
+        assertSlot(out, 0, 0, 0, 20, 10);
+        assertSlot(out, 1, 40, 0, 60, 10);
+        assertSlot(out, 2, 80, 0, 100, 10);
+    }
+
+    @Test
+    public void layout_windowLeavesOtherSlotsUntouched() {
+        float[] out = new float[6 * SlotLayout.STRIDE];
+        out[0] = -1;
+        out[5 * SlotLayout.STRIDE] = -1;
+        SlotLayout.layout(1, 5, 100, 0, 10, 10, 2, 20, 15, false, 0, 10, out);
+        assertEquals(-1f, out[0], DELTA);
+        assertEquals(-1f, out[5 * SlotLayout.STRIDE], DELTA);
+        //slot 1 starts at 20, slot 2 at 40 + 20 for the group gap, both scrolled by 15
+        assertSlot(out, 1, 5, 0, 15, 10);
+        assertSlot(out, 2, 45, 0, 55, 10);
+    }
+
+    @Test
+    public void slotAt_isTheInverseOfSlotOffset() {
+        int numChars = 12;
+        for (int i = 0; i < numChars; i++) {
+            float offset = SlotLayout.slotOffset(i, 40, 10, 4, 30);
+            assertEquals(i, SlotLayout.slotAt(offset, numChars, 40, 10, 4, 30));
+            assertEquals(i, SlotLayout.slotAt(offset + 39, numChars, 40, 10, 4, 30));
+        }
+    }
+
+    @Test
+    public void slotAt_clamps() {
+        assertEquals(0, SlotLayout.slotAt(-50, 4, 40, 10, 0, 0));
+        assertEquals(3, SlotLayout.slotAt(10000, 4, 40, 10, 0, 0));
+        assertEquals(0, SlotLayout.slotAt(50, 0, 40, 10, 0, 0));
+    }
+
+    private static void assertSlot(float[] out, int slot, float left, float top, float right, float bottom) {
+        int offset = slot * SlotLayout.STRIDE;
+        assertEquals("left of " + slot, left, out[offset], DELTA);
+        assertEquals("top of " + slot, top, out[offset + 1], DELTA);
+        assertEquals("right of " + slot, right, out[offset + 2], DELTA);
+        assertEquals("bottom of " + slot, bottom, out[offset + 3], DELTA);
+    }
+}